@@ -7,6 +7,7 @@ import {
     Card,
     CardContent,
     CardActions,
+    CardMedia,
     Button,
     Box,
     CircularProgress,
@@ -128,6 +129,15 @@ const Dashboard = () => {
                             {projects.map((project) => (
                                 <Grid item xs={12} sm={6} md={4} key={project.id}>
                                     <Card>
+                                        {project.thumbnailHash && (
+                                            <CardMedia
+                                                component="img"
+                                                height="140"
+                                                image={projectService.getThumbnailUrl(project.thumbnailHash)}
+                                                alt={project.name}
+                                                sx={{ objectFit: 'contain', bgcolor: 'grey.50' }}
+                                            />
+                                        )}
                                         <CardContent>
                                             <Typography gutterBottom variant="h6" component="h3">
                                                 {project.name}
@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
 import {
     Container,
@@ -68,6 +68,11 @@ const ProjectEditor = () => {
     const [outputFormat, setOutputFormat] = useState('SVG');
     const [editorTab, setEditorTab] = useState(0); // 0 for code editor tab, 1 for visual editor tab
     const [downloading, setDownloading] = useState(false);
+    const [diagnostics, setDiagnostics] = useState([]);
+    // Content whose preview came from the stored render, no need to render it again
+    const storedRenderContent = useRef(null);
+    // Live SVG preview channel, null until connected or when unavailable
+    const previewChannel = useRef(null);
 
     // Load existing porject
     useEffect(() => {
@@ -76,17 +81,68 @@ const ProjectEditor = () => {
         }
     }, [id]);
 
+    useEffect(() => {
+        const channel = plantUmlService.openPreviewChannel((result) => {
+            if (result.status === 200) {
+                setRenderedDiagram(result.data);
+            }
+        });
+        previewChannel.current = channel;
+        return () => {
+            previewChannel.current = null;
+            if (channel) {
+                channel.close();
+            }
+        };
+    }, []);
+
     // Autorender when project changes with debouncing
     useEffect(() => {
         if (project.content) {
+            if (outputFormat === 'SVG' && project.content === storedRenderContent.current) {
+                return;
+            }
             debounceRender();
         }
     }, [project.content, outputFormat]);
 
+    // Syntax check on a short debounce, much cheaper than the preview render
+    useEffect(() => {
+        if (!project.content) {
+            setDiagnostics([]);
+            return;
+        }
+        let cancelled = false;
+        const checkId = setTimeout(async () => {
+            try {
+                const result = await plantUmlService.checkSyntax(project.content);
+                if (!cancelled) {
+                    setDiagnostics(result.diagnostics);
+                }
+            } catch (error) {
+                // The preview still shows the error image
+            }
+        }, 150);
+        return () => {
+            cancelled = true;
+            clearTimeout(checkId);
+        };
+    }, [project.content]);
+
     const fetchProject = async () => {
         setLoading(true);
         try {
             const response = await projectService.getProject(id);
+            if (response.data.content) {
+                try {
+                    const stored = await projectService.getProjectRender(id);
+                    storedRenderContent.current = response.data.content;
+                    setRenderedDiagram(stored.data);
+                } catch (renderError) {
+                    // Falls back to the normal preview render
+                    storedRenderContent.current = null;
+                }
+            }
             setProject(response.data);
         } catch (error) {
             console.error('Error fetching project:', error);
@@ -151,13 +207,17 @@ const ProjectEditor = () => {
     const renderDiagram = async () => {
         if (!project.content || rendering) return;
 
+        storedRenderContent.current = null;
         setRendering(true);
         try {
-            if (outputFormat === 'SVG') {
-                const diagramSvg = await plantUmlService.renderDiagram(project.content, 'SVG');
+            if (outputFormat === 'SVG' && previewChannel.current && previewChannel.current.isOpen()) {
+                // Result arrives through the channel callback, drafts while typing
+                previewChannel.current.send(project.content, 'SVG', true, 'DRAFT');
+            } else if (outputFormat === 'SVG') {
+                const diagramSvg = await plantUmlService.renderDiagram(project.content, 'SVG', true, 'DRAFT');
                 setRenderedDiagram(diagramSvg);
             } else {
-                const diagramBlob = await plantUmlService.generateImage(project.content, outputFormat);
+                const diagramBlob = await plantUmlService.generateImage(project.content, outputFormat, 'DRAFT');
                 const diagramUrl = URL.createObjectURL(diagramBlob);
                 setRenderedDiagram(diagramUrl);
             }
@@ -318,6 +378,8 @@ const ProjectEditor = () => {
                                     onChange={handleChange}
                                     minRows={15}
                                     maxRows={50}
+                                    error={diagnostics.length > 0}
+                                    helperText={diagnostics.map((d) => `Line ${d.line}: ${d.message}`).join(' | ')}
                                     placeholder="@startuml
                                                 Alice -> Bob: Hello
                                                 Bob --> Alice: Hi there
@@ -128,6 +128,7 @@ const ProjectList = () => {
                         <Table>
                             <TableHead>
                                 <TableRow>
+                                    <TableCell>Preview</TableCell>
                                     <TableCell>Name</TableCell>
                                     <TableCell>Description</TableCell>
                                     <TableCell>Created</TableCell>
@@ -138,6 +139,17 @@ const ProjectList = () => {
                             <TableBody>
                                 {projects.map((project) => (
                                     <TableRow key={project.id} hover>
+                                        <TableCell sx={{ width: 96 }}>
+                                            {project.thumbnailHash && (
+                                                <Box
+                                                    component="img"
+                                                    src={projectService.getThumbnailUrl(project.thumbnailHash)}
+                                                    alt=""
+                                                    loading="lazy"
+                                                    sx={{ width: 80, height: 60, objectFit: 'contain', display: 'block' }}
+                                                />
+                                            )}
+                                        </TableCell>
                                         <TableCell component="th" scope="row">
                                             <Typography
                                                 component={RouterLink}
@@ -2,18 +2,57 @@ import axios from 'axios';
 
 const API_URL = '/api/plantuml';
 
-const renderDiagram = async (source, format = 'SVG') => {
+// Last rendered preview, revalidated with If-None-Match instead of downloaded again
+let lastRender = null;
+
+// Rebuilds an SVG from a 226 delta: [offset, length] copies from the held SVG, strings are inserted
+const applyDelta = (base, delta) => {
+    const parts = delta.ops.map((op) => (typeof op === 'string' ? op : base.substring(op[0], op[0] + op[1])));
+    const svg = parts.join('');
+    return svg.length === delta.length ? svg : null;
+};
+
+// optimize drops the embedded source and trims the markup, meant for previews rather than exports
+// DRAFT quality skips shadows and rounded corners, for the live preview only, saves and exports stay FULL
+const renderDiagram = async (source, format = 'SVG', optimize = false, quality = 'FULL') => {
     try {
+        const url = `${API_URL}/render?format=${format}${optimize ? '&optimize=true' : ''}${quality === 'DRAFT' ? '&quality=DRAFT' : ''}`;
+        const headers = {
+            'Content-Type': 'text/plain',
+        };
+        if (lastRender && lastRender.url === url) {
+            headers['If-None-Match'] = lastRender.etag;
+        }
+        if (format === 'SVG') {
+            // The server may answer with the difference to the SVG named in If-None-Match
+            headers['A-IM'] = 'svgdelta';
+        }
+
         const response = await axios.post(
-            `${API_URL}/render?format=${format}`,
+            url,
             source,
             {
-                headers: {
-                    'Content-Type': 'text/plain',
-                },
+                headers,
+                validateStatus: (status) => (status >= 200 && status < 300) || status === 304,
             }
         );
-        return response.data;
+
+        if (response.status === 304) {
+            return lastRender.data;
+        }
+        let data = response.data;
+        if (response.status === 226) {
+            const delta = typeof data === 'string' ? JSON.parse(data) : data;
+            data = lastRender && lastRender.etag === response.headers['delta-base'] ? applyDelta(lastRender.data, delta) : null;
+            if (data === null) {
+                // Base mismatch, fetch the whole SVG
+                lastRender = null;
+                return renderDiagram(source, format, optimize, quality);
+            }
+        }
+        const etag = response.headers['etag'];
+        lastRender = etag ? { etag, url, data } : null;
+        return data;
 
     } catch (error) {
         console.error('Error rendering diagram:', error);
@@ -22,10 +61,11 @@ const renderDiagram = async (source, format = 'SVG') => {
 };
 
 
-const generateImage = async (source, format = 'PNG') => {
+// DRAFT PNGs are also rendered at a lower scale
+const generateImage = async (source, format = 'PNG', quality = 'FULL') => {
     try {
         const response = await axios.post(
-            `${API_URL}/image?format=${format}`,
+            `${API_URL}/image?format=${format}${quality === 'DRAFT' ? '&quality=DRAFT' : ''}`,
             source,
             {
                 headers: {
@@ -43,8 +83,52 @@ const generateImage = async (source, format = 'PNG') => {
 
 };
 
+// Parse-only diagnostics, cheap enough to call while typing
+const checkSyntax = async (source) => {
+    const response = await axios.post(
+        `${API_URL}/check`,
+        source,
+        {
+            headers: {
+                'Content-Type': 'text/plain',
+            },
+        }
+    );
+    return response.data;
+};
+
+// Live preview over a WebSocket, the server drops superseded versions and only answers the newest one
+// Returns null where WebSockets aren't available, callers fall back to renderDiagram
+const openPreviewChannel = (onResult) => {
+    if (typeof WebSocket === 'undefined') {
+        return null;
+    }
+    const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+    const socket = new WebSocket(`${protocol}//${window.location.host}/ws/preview`);
+    let version = 0;
+
+    socket.onmessage = (event) => {
+        const result = JSON.parse(event.data);
+        // A reply to an older version can still be in flight when a newer one was sent
+        if (result.version === version) {
+            onResult(result);
+        }
+    };
+
+    return {
+        isOpen: () => socket.readyState === WebSocket.OPEN,
+        send: (source, format = 'SVG', optimize = true, quality = 'DRAFT') => {
+            version += 1;
+            socket.send(JSON.stringify({ version, source, format, optimize, quality }));
+        },
+        close: () => socket.close(),
+    };
+};
+
 const plantUmlService = {
     renderDiagram,
+    openPreviewChannel,
+    checkSyntax,
     generateImage,
 };
 
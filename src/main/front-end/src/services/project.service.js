@@ -11,6 +11,16 @@ const getProject = (id) => {
     return api.get(`${PROJECTS_URL}/${id}`);
 };
 
+// Stored SVG of a saved project, no render needed when it is up to date
+const getProjectRender = (id) => {
+    return api.get(`${PROJECTS_URL}/${id}/render`, { responseType: 'text' });
+};
+
+// Public and cached for good, usable directly as an <img> src
+const getThumbnailUrl = (thumbnailHash) => {
+    return `/api/thumbnails/${thumbnailHash}`;
+};
+
 const createProject = (projectData) => {
     return api.post(PROJECTS_URL, projectData);
 };
@@ -28,6 +38,8 @@ const deleteProject = (id) => {
 const projectService = {
     getAllProjects,
     getProject,
+    getProjectRender,
+    getThumbnailUrl,
     createProject,
     updateProject,
     deleteProject,
@@ -38,6 +38,22 @@ updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
 FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
+CREATE TABLE project_renders (
+project_id BIGINT PRIMARY KEY,
+content_hash VARCHAR(64) NOT NULL,
+svg TEXT,
+rendered_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+FOREIGN KEY (project_id) REFERENCES projects(id) ON DELETE CASCADE
+);
+
+CREATE TABLE diagram_thumbnails (
+content_hash VARCHAR(64) PRIMARY KEY,
+png BYTEA NOT NULL,
+width INTEGER NOT NULL,
+height INTEGER NOT NULL,
+created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
 
 
 
@@ -3,10 +3,14 @@ package com.example.plantumlwebeditorv2;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication
 @EnableJpaAuditing
+@EnableScheduling
+@EnableAsync
 public class PlantUmlWebEditorV2Application {
     public static void main(String[] args) {
         SpringApplication.run(PlantUmlWebEditorV2Application.class, args);
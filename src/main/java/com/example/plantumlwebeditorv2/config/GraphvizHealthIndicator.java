@@ -0,0 +1,34 @@
+package com.example.plantumlwebeditorv2.config;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.service.GraphvizProbe;
+import com.example.plantumlwebeditorv2.service.GraphvizProbe.GraphvizStatus;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+// Shows up as /actuator/health/graphviz
+// Missing Graphviz is reported as UNKNOWN so it does not take the whole app down, SVG still works without it
+@Component("graphviz")
+@RequiredArgsConstructor
+public class GraphvizHealthIndicator implements HealthIndicator {
+    private final GraphvizProbe graphvizProbe;
+
+    @Override
+    public Health health() {
+        GraphvizStatus status = graphvizProbe.getStatus();
+        Health.Builder builder = status.available() ? Health.up() : Health.unknown();
+
+        builder.withDetail("available", status.available());
+        if (status.version() != null) {
+            builder.withDetail("version", status.version());
+        }
+        if (status.path() != null) {
+            builder.withDetail("path", status.path());
+        }
+        if (status.checkedAt() != null) {
+            builder.withDetail("checkedAt", status.checkedAt().toString());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.plantumlwebeditorv2.config;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.service.EngineWarmUp;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+// Shows up as /actuator/health/warmUp, part of the readiness group so no traffic arrives before it is UP
+@Component("warmUp")
+@RequiredArgsConstructor
+public class WarmUpHealthIndicator implements HealthIndicator {
+    private final EngineWarmUp engineWarmUp;
+
+    @Override
+    public Health health() {
+        if (!engineWarmUp.isFinished()) {
+            return Health.outOfService().withDetail("renders", engineWarmUp.getRenders()).build();
+        }
+        Health.Builder builder = Health.up()
+                .withDetail("renders", engineWarmUp.getRenders())
+                .withDetail("failures", engineWarmUp.getFailures());
+        if (engineWarmUp.getDuration() != null) {
+            builder.withDetail("durationMs", engineWarmUp.getDuration().toMillis());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.plantumlwebeditorv2.config;
+
+import com.example.plantumlwebeditorv2.controller.LivePreviewHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+// Live preview endpoint for the editor
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final LivePreviewHandler livePreviewHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(livePreviewHandler, "/ws/preview")
+                .setAllowedOrigins("*");
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.plantumlwebeditorv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.dto.AuthDTOs.MessageResponse;
+import com.example.plantumlwebeditorv2.dto.LayoutBenchmarkDTOs.Report;
+import com.example.plantumlwebeditorv2.service.LayoutBenchmark;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
+
+
+// Admin only comparison of the layout engines on this machine
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/admin/layout-benchmark")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class LayoutBenchmarkController {
+    private final LayoutBenchmark layoutBenchmark;
+
+    @PostMapping
+    public ResponseEntity<Report> run(@RequestParam(defaultValue = "SVG") String format,
+                                      @RequestParam(defaultValue = "5") int iterations,
+                                      @RequestParam(defaultValue = "1") int concurrency) throws IOException {
+        return ResponseEntity.ok(layoutBenchmark.run(OutputFormat.valueOf(format.toUpperCase()), iterations, concurrency));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<MessageResponse> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+    }
+}
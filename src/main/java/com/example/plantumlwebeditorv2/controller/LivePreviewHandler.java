@@ -0,0 +1,244 @@
+package com.example.plantumlwebeditorv2.controller;
+
+import com.example.plantumlwebeditorv2.dto.PreviewDTOs.PreviewRequest;
+import com.example.plantumlwebeditorv2.dto.PreviewDTOs.PreviewResult;
+import com.example.plantumlwebeditorv2.service.LayoutEngine;
+import com.example.plantumlwebeditorv2.service.PlantUmlService;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import com.example.plantumlwebeditorv2.service.RenderArtifact;
+import com.example.plantumlwebeditorv2.service.RenderOptions;
+import com.example.plantumlwebeditorv2.service.RenderQuality;
+import com.example.plantumlwebeditorv2.service.RenderRejectedException;
+import com.example.plantumlwebeditorv2.service.RenderTimeoutException;
+import com.example.plantumlwebeditorv2.service.SourceTooLargeException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Live preview channel, one WebSocket session per open editor
+ * Latest wins: a new source version cancels the session's queued or running render, and only the
+ * newest result is pushed. Cancelling interrupts the waiting thread, the coalescer then drops the
+ * layout unless another request is waiting for the same diagram. Only that layout's own dot is killed,
+ * so a fast typist never takes down other sessions' previews or batch renders
+ */
+@Component
+public class LivePreviewHandler extends TextWebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(LivePreviewHandler.class);
+
+    private static final String PREVIEW_ATTRIBUTE = "preview";
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_LIMIT_BYTES = 16 * 1024 * 1024;
+
+    private final PlantUmlService plantUmlService;
+    private final ObjectMapper objectMapper;
+    private final Counter supersededCounter;
+    private final Counter pushedCounter;
+    private final int maxMessageBytes;
+
+    // Waiting on a render blocks, a virtual thread per wait keeps that cheap and interruptible
+    private final ExecutorService waiters = Executors.newVirtualThreadPerTaskExecutor();
+
+    public LivePreviewHandler(PlantUmlService plantUmlService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${plantuml.preview.max-message-bytes:65536}") int maxMessageBytes) {
+        this.plantUmlService = plantUmlService;
+        this.objectMapper = objectMapper;
+        this.maxMessageBytes = maxMessageBytes;
+        this.supersededCounter = Counter.builder("plantuml.preview.superseded")
+                .description("Preview renders cancelled by a newer version")
+                .register(meterRegistry);
+        this.pushedCounter = Counter.builder("plantuml.preview.pushed")
+                .description("Preview results sent to editors")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // Messages carry the whole source, the container default of 8 KB is too small
+        session.setTextMessageSizeLimit(maxMessageBytes);
+        // Results are sent from render threads, the decorator serializes the sends
+        WebSocketSession concurrent = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT_BYTES);
+        session.getAttributes().put(PREVIEW_ATTRIBUTE, new PreviewSession(concurrent));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        PreviewSession preview = (PreviewSession) session.getAttributes().get(PREVIEW_ATTRIBUTE);
+        PreviewRequest request;
+        try {
+            request = objectMapper.readValue(message.getPayload(), PreviewRequest.class);
+        } catch (JsonProcessingException e) {
+            preview.send(new PreviewResult(-1, HttpStatus.BAD_REQUEST.value(), null, null, "Malformed preview message"));
+            return;
+        }
+        preview.submit(request);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        PreviewSession preview = (PreviewSession) session.getAttributes().remove(PREVIEW_ATTRIBUTE);
+        if (preview != null) {
+            preview.cancel();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        waiters.shutdownNow();
+    }
+
+    /*
+     * ReentrantLocks rather than synchronized: waiters are virtual threads, and on JDK 21 a monitor held
+     * across the blocking send would pin the carrier thread for the whole write
+     */
+    private final class PreviewSession {
+        private final WebSocketSession session;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReentrantLock sendLock = new ReentrantLock();
+        private long sequence;
+        private Future<?> current;
+        // The current render is writing its result, it is left to finish then
+        private boolean sending;
+
+        PreviewSession(WebSocketSession session) {
+            this.session = session;
+        }
+
+        void submit(PreviewRequest request) {
+            lock.lock();
+            try {
+                long ticket = ++sequence;
+                if (current != null && !sending && current.cancel(true)) {
+                    supersededCounter.increment();
+                }
+                sending = false;
+                current = waiters.submit(() -> render(ticket, request));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                sequence++;
+                if (current != null && !sending) {
+                    current.cancel(true);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isLatest(long ticket) {
+            lock.lock();
+            try {
+                return ticket == sequence;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void render(long ticket, PreviewRequest request) {
+            PreviewResult result = new PreviewResult();
+            result.setVersion(request.getVersion());
+            try {
+                OutputFormat format = OutputFormat.valueOf(
+                        (request.getFormat() == null ? "SVG" : request.getFormat()).toUpperCase());
+                RenderOptions options = RenderOptions.DEFAULT.withOptimizeSvg(request.isOptimize()).withPage(request.getPage())
+                        .withLayout(request.getLayout() == null ? null : LayoutEngine.parse(request.getLayout()))
+                        .withQuality(request.getQuality() == null ? RenderQuality.FULL : RenderQuality.parse(request.getQuality()));
+                RenderArtifact image = plantUmlService.render(request.getSource(), format, options);
+                result.setStatus(HttpStatus.OK.value());
+                if (format == OutputFormat.SVG) {
+                    result.setContentType("image/svg+xml");
+                    result.setData(image.toString(StandardCharsets.UTF_8));
+                } else {
+                    result.setContentType("image/png");
+                    result.setData(Base64.getEncoder().encodeToString(image.toByteArray()));
+                }
+            } catch (SourceTooLargeException e) {
+                fail(result, HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                fail(result, HttpStatus.BAD_REQUEST, e.getMessage());
+            } catch (RenderRejectedException e) {
+                fail(result, HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+            } catch (RenderTimeoutException e) {
+                fail(result, HttpStatus.GATEWAY_TIMEOUT, e.getMessage());
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted() || !isLatest(ticket)) {
+                    // Superseded by a newer version
+                    return;
+                }
+                logger.warn("Preview render failed", e);
+                fail(result, HttpStatus.INTERNAL_SERVER_ERROR, "Render failed");
+            }
+            sendIfLatest(ticket, result);
+        }
+
+        /*
+         * Latest check under the state lock, the send outside it, so submit and cancel never wait for the write
+         * Sends take turns on their own lock, the check is made in turn too so an older result can't overtake
+         * Once sending, a newer submit leaves this thread alone: an interrupted blocking send leaves
+         * the endpoint mid-message and every later send on it fails
+         */
+        private void sendIfLatest(long ticket, PreviewResult result) {
+            sendLock.lock();
+            try {
+                lock.lock();
+                try {
+                    if (ticket != sequence) {
+                        return;
+                    }
+                    sending = true;
+                } finally {
+                    lock.unlock();
+                }
+                send(result);
+                pushedCounter.increment();
+            } finally {
+                lock.lock();
+                try {
+                    if (ticket == sequence) {
+                        sending = false;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                sendLock.unlock();
+            }
+        }
+
+        void send(PreviewResult result) {
+            try {
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(result)));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Could not send preview result, session {} is gone", session.getId());
+            }
+        }
+    }
+
+    private static void fail(PreviewResult result, HttpStatus status, String message) {
+        result.setStatus(status.value());
+        result.setError(message);
+    }
+}
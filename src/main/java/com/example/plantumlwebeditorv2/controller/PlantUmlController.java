@@ -1,14 +1,45 @@
 package com.example.plantumlwebeditorv2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.dto.AuthDTOs.MessageResponse;
+import com.example.plantumlwebeditorv2.dto.BatchRenderDTOs.BatchRenderRequest;
+import com.example.plantumlwebeditorv2.dto.PageInfoDTO;
+import com.example.plantumlwebeditorv2.dto.RenderErrorDTO;
+import com.example.plantumlwebeditorv2.dto.SyntaxCheckDTOs.CheckResult;
+import com.example.plantumlwebeditorv2.service.BatchRenderService;
+import com.example.plantumlwebeditorv2.service.LayoutEngine;
 import com.example.plantumlwebeditorv2.service.PlantUmlService;
 import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import com.example.plantumlwebeditorv2.service.RenderArtifact;
+import com.example.plantumlwebeditorv2.service.RenderOptions;
+import com.example.plantumlwebeditorv2.service.RenderQuality;
+import com.example.plantumlwebeditorv2.service.RenderRejectedException;
+import com.example.plantumlwebeditorv2.service.RenderTimeoutException;
+import com.example.plantumlwebeditorv2.service.SourceTooLargeException;
+import com.example.plantumlwebeditorv2.service.SvgDeltaService;
+import com.example.plantumlwebeditorv2.service.SyntaxCheckService;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
 
 
 
@@ -18,25 +49,44 @@ import java.io.IOException;
 @CrossOrigin(origins = "*", maxAge = 3600)
 public class PlantUmlController {
     private final PlantUmlService plantUmlService;
+    private final BatchRenderService batchRenderService;
+    private final SyntaxCheckService syntaxCheckService;
+    private final SvgDeltaService svgDeltaService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    // POST bodies: clients may keep the image but must revalidate before reusing it
+    private static final CacheControl REVALIDATE = CacheControl.noCache();
+    private static final String NDJSON = "application/x-ndjson";
+    // Growth step when the body length isn't declared
+    private static final int SOURCE_CHUNK_BYTES = 8 * 1024;
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    // Errors are transient or request-specific, no cache may keep one in place of the image
+    private static final CacheControl NO_STORE = CacheControl.noStore();
+    // RFC 3229 delta encoding: the client sends A-IM and names the SVG it holds in If-None-Match
+    private static final String A_IM = "A-IM";
+    private static final String SVG_DELTA = "svgdelta";
+    private static final String SVG_DELTA_TYPE = "application/vnd.plantuml.svg-delta+json";
 
     // For rendering diagrams as string (SVG, ASCII)
     @PostMapping("/render")
-    public ResponseEntity<String> renderDiagram(
-            @RequestBody String source,
-            @RequestParam(defaultValue = "SVG") String format) throws IOException {
+    public void renderDiagram(
+            @RequestParam(defaultValue = "SVG") String format,
+            @RequestParam(defaultValue = "false") boolean optimize,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String layout,
+            @RequestParam(required = false) String quality,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         OutputFormat outputFormat = OutputFormat.valueOf(format.toUpperCase());
 
         if (outputFormat == OutputFormat.SVG) {
-            String svgContent = plantUmlService.renderDiagram(source, OutputFormat.SVG);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType("image/svg+xml")) // n
-                    .body(svgContent);
+            respond(request, response, readSource(request), OutputFormat.SVG, options(optimize, page, layout, quality), REVALIDATE, true);
 
         } else {
 //            throw new IllegalArgumentException("Only SVG and ASCII formats can be rendered as strings");
-            return ResponseEntity.badRequest().build();
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
         }
 
     }
@@ -44,26 +94,379 @@ public class PlantUmlController {
 
     // Diagram as binary (image response or for downloading by setting the headers appropriately)
     @PostMapping(value = "/image")
-    public ResponseEntity<byte[]> generateImage(
-            @RequestBody String source,
-            @RequestParam(defaultValue = "PNG") String format) throws IOException {
+    public void generateImage(
+            @RequestParam(defaultValue = "PNG") String format,
+            @RequestParam(defaultValue = "false") boolean optimize,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String layout,
+            @RequestParam(required = false) String quality,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         OutputFormat outputFormat = OutputFormat.valueOf(format.toUpperCase());
-        byte[] imageData = plantUmlService.generateImage(source, outputFormat);
+        respond(request, response, readSource(request), outputFormat, options(optimize, page, layout, quality), REVALIDATE, false);
+
+    }
+
+    // Cacheable GET variants, the path is the standard PlantUML text encoding of the source
+    @GetMapping("/svg/{encoded}")
+    public void encodedSvg(@PathVariable String encoded, @RequestParam(defaultValue = "false") boolean optimize,
+                           @RequestParam(defaultValue = "0") int page, @RequestParam(required = false) String layout,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        renderEncoded(encoded, OutputFormat.SVG, options(optimize, page, layout, null), request, response);
+    }
+
+    @GetMapping("/png/{encoded}")
+    public void encodedPng(@PathVariable String encoded, @RequestParam(defaultValue = "0") int page,
+                           @RequestParam(required = false) String layout,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        renderEncoded(encoded, OutputFormat.PNG, options(false, page, layout, null), request, response);
+    }
+
+    // Diagnostics with line numbers for the editor, parses only and never renders
+    @PostMapping("/check")
+    public ResponseEntity<CheckResult> checkSyntax(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(syntaxCheckService.check(readSource(request)));
+    }
+
+    // Pages of a multi-block or newpage source, parsed but not laid out
+    @PostMapping("/pages")
+    public ResponseEntity<List<PageInfoDTO>> listPages(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(plantUmlService.listPages(readSource(request)));
+    }
+
+    // Every page of the source rendered in parallel, streamed like a batch
+    @PostMapping("/pages/render")
+    public void renderPages(
+            @RequestParam(defaultValue = "SVG") String format,
+            @RequestParam(defaultValue = "false") boolean optimize,
+            @RequestParam(required = false) String layout,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        OutputFormat outputFormat = OutputFormat.valueOf(format.toUpperCase());
+        if (layout != null) {
+            // Rejected here, not once per page
+            LayoutEngine.parse(layout);
+        }
+        batchRenderService.renderPages(readSource(request), outputFormat, optimize, layout, ndjson(response));
+    }
+
+    /*
+     * Many diagrams in one authenticated request, for build pipelines
+     * Streams one JSON object per line as each item finishes, every line carries its own status
+     */
+    @PostMapping("/batch")
+    public void renderBatch(@Valid @RequestBody BatchRenderRequest batch,
+                            HttpServletResponse response) throws IOException {
+        batchRenderService.render(batch.getItems(), ndjson(response));
+    }
+
+    // One JSON object per line, flushed so the client sees each result as soon as it is ready
+    private BatchRenderService.ResultSink ndjson(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        return result -> {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+            out.flush();
+        };
+    }
+
+    /*
+     * Request body as diagram source, read against a hard byte cap instead of being bound in full first
+     * A declared Content-Length over the cap is refused before anything is read, a chunked body once it passes it
+     * With a Content-Length the bytes land in one exactly sized array and are decoded once
+     */
+    private String readSource(HttpServletRequest request) throws IOException {
+        int limit = plantUmlService.maxSourceBytes();
+        long declared = request.getContentLengthLong();
+        if (declared > limit) {
+            throw new SourceTooLargeException(limit);
+        }
+        byte[] buffer = new byte[declared >= 0 ? (int) declared : Math.min(limit, SOURCE_CHUNK_BYTES)];
+        int length = 0;
+        try (InputStream in = request.getInputStream()) {
+            while (true) {
+                if (length == buffer.length) {
+                    // Full: either the body ends here or it goes on, past the declared length or the cap
+                    int next = in.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    if (length >= limit) {
+                        throw new SourceTooLargeException(limit);
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(limit, (long) length * 2 + SOURCE_CHUNK_BYTES));
+                    buffer[length++] = (byte) next;
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+        }
+        if (length == 0) {
+            throw new IllegalArgumentException("Required request body is missing");
+        }
+        String encoding = request.getCharacterEncoding();
+        return new String(buffer, 0, length, encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8);
+    }
+
+    // layout is GRAPHVIZ or SMETANA, null leaves it to the server default; quality is FULL unless DRAFT is asked for
+    private static RenderOptions options(boolean optimize, int page, String layout, String quality) {
+        return RenderOptions.DEFAULT.withOptimizeSvg(optimize).withPage(page)
+                .withLayout(layout == null ? null : LayoutEngine.parse(layout))
+                .withQuality(quality == null ? RenderQuality.FULL : RenderQuality.parse(quality));
+    }
+
+    /*
+     * The URL addresses the content, so browsers and CDNs can keep the response for good
+     * Except a Smetana stand-in while dot is missing: that one is revalidated, its ETag changes once dot is back
+     */
+    private void renderEncoded(String encoded, OutputFormat format, RenderOptions options,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String source = plantUmlService.decodeSource(encoded);
+        CacheControl cacheControl = plantUmlService.isLayoutFallback(options) ? REVALIDATE : IMMUTABLE;
+        // No deltas here, a shared cache must never store one as the image
+        respond(request, response, source, format, options, cacheControl, false);
+    }
+
+    // Content negotiation, conditional check, then render (or cache hit) and write
+    private void respond(HttpServletRequest request, HttpServletResponse response, String source,
+                         OutputFormat format, RenderOptions options, CacheControl cacheControl,
+                         boolean allowDelta) throws IOException {
+        boolean gzip = false;
+        if (RenderArtifact.isCompressible(format)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            gzip = acceptsGzip(request.getHeaders(HttpHeaders.ACCEPT_ENCODING));
+        }
+
+        // Each content coding is a different representation and needs its own strong tag
+        String identityTag = plantUmlService.etag(source, format, options);
+        String gzipTag = withoutQuote(identityTag) + "-gzip\"";
+        // Whether a gzip variant exists is only known after the render, a client may hold either tag
+        if (notModified(request, response, gzip ? List.of(gzipTag, identityTag) : List.of(identityTag), cacheControl)) {
+            return;
+        }
+        RenderArtifact image = plantUmlService.render(source, format, options);
+        gzip = gzip && image.hasGzip();
+        // Only now, a failed render must not carry the image's validator or caching
+        setValidators(response, gzip ? gzipTag : identityTag, cacheControl);
+
+        if (allowDelta && format == OutputFormat.SVG) {
+            response.addHeader(HttpHeaders.VARY, A_IM);
+            if (acceptsDelta(request.getHeaders(A_IM))) {
+                // Whatever is sent now is the base of the client's next request
+                svgDeltaService.remember(identityTag, image);
+                String heldTag = heldTag(request.getHeaders(HttpHeaders.IF_NONE_MATCH));
+                int fullBytes = gzip ? image.gzipLength() : image.length();
+                byte[] delta = heldTag == null ? null : svgDeltaService.delta(identityTag(heldTag), image, fullBytes);
+                if (delta != null) {
+                    writeDelta(response, heldTag, delta);
+                    return;
+                }
+            }
+        }
+        writeImage(response, format, image, gzip);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        switch (outputFormat) {
+    private static boolean acceptsDelta(Enumeration<String> aIm) {
+        while (aIm.hasMoreElements()) {
+            for (String entry : aIm.nextElement().split(",")) {
+                if (entry.split(";")[0].trim().equalsIgnoreCase(SVG_DELTA)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // First tag the client holds, null for none or *
+    private static String heldTag(Enumeration<String> ifNoneMatch) {
+        if (!ifNoneMatch.hasMoreElements()) {
+            return null;
+        }
+        String tag = ifNoneMatch.nextElement().split(",")[0].trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        return tag.startsWith("\"") ? tag : null;
+    }
+
+    // Bases are kept under the identity tag, whichever coding the client received
+    private static String identityTag(String tag) {
+        return tag.endsWith("-gzip\"") ? tag.substring(0, tag.length() - "-gzip\"".length()) + "\"" : tag;
+    }
+
+    private static String withoutQuote(String etag) {
+        return etag.substring(0, etag.length() - 1);
+    }
+
+    // 226 IM Used, the ETag header still names the full image the delta rebuilds
+    // Delta-Base echoes the tag as the client sent it
+    private void writeDelta(HttpServletResponse response, String base, byte[] delta) throws IOException {
+        response.setStatus(HttpStatus.IM_USED.value());
+        response.setHeader("IM", SVG_DELTA);
+        response.setHeader("Delta-Base", base);
+        response.setContentType(SVG_DELTA_TYPE);
+        response.setContentLength(delta.length);
+        response.getOutputStream().write(delta);
+        meterRegistry.summary("plantuml.response.bytes", "format", OutputFormat.SVG.name(), "encoding", SVG_DELTA)
+                .record(delta.length);
+    }
+
+    /*
+     * Conditional request support: the ETag is derived from the source, so a client that already
+     * holds the image gets a 304 without any render or cache lookup
+     * Done by hand since Spring's checkNotModified answers 412 instead of 304 for POST
+     */
+    private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                                List<String> etags, CacheControl cacheControl) {
+        String etag = matching(request.getHeaders(HttpHeaders.IF_NONE_MATCH), etags);
+        if (etag == null) {
+            return false;
+        }
+        setValidators(response, etag, cacheControl);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    // 304 and successful responses only, error responses go out without them
+    private static void setValidators(HttpServletResponse response, String etag, CacheControl cacheControl) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+    }
+
+    // Which of the current tags If-None-Match names, null for none
+    // If-None-Match uses weak comparison, so W/ prefixed tags match as well, * matches the preferred one
+    private static String matching(Enumeration<String> ifNoneMatch, List<String> etags) {
+        while (ifNoneMatch.hasMoreElements()) {
+            for (String candidate : ifNoneMatch.nextElement().split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*")) {
+                    return etags.get(0);
+                }
+                if (etags.contains(tag)) {
+                    return tag;
+                }
+            }
+        }
+        return null;
+    }
+
+    // gzip (or *) listed without q=0
+    static boolean acceptsGzip(Enumeration<String> acceptEncoding) {
+        while (acceptEncoding.hasMoreElements()) {
+            for (String entry : acceptEncoding.nextElement().split(",")) {
+                String[] parts = entry.split(";");
+                String coding = parts[0].trim().toLowerCase();
+                if (!coding.equals("gzip") && !coding.equals("x-gzip") && !coding.equals("*")) {
+                    continue;
+                }
+                double quality = 1.0;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(param.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                if (quality > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Rendered bytes go straight from the render buffer to the servlet stream, no intermediate copies
+     * The gzip variant was compressed when the render finished, nothing is compressed per request
+     */
+    private void writeImage(HttpServletResponse response, OutputFormat format, RenderArtifact image,
+                            boolean gzip) throws IOException {
+        long cpuBefore = threadCpuTime();
+        switch (format) {
             case SVG:
-                headers.setContentType(MediaType.parseMediaType("image/svg+xml"));
+                response.setContentType("image/svg+xml");
                 break;
             case PNG:
             default:
-                headers.setContentType(MediaType.IMAGE_PNG);
+                response.setContentType(MediaType.IMAGE_PNG_VALUE);
                 break;
         }
 
-        return new ResponseEntity<>(imageData, headers, HttpStatus.OK);
+        String encoding = "identity";
+        int length;
+        if (gzip && image.hasGzip()) {
+            encoding = "gzip";
+            length = image.gzipLength();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            response.setContentLength(length);
+            image.writeGzipTo(response.getOutputStream());
+        } else {
+            length = image.length();
+            response.setContentLength(length);
+            image.writeTo(response.getOutputStream());
+        }
+
+        meterRegistry.summary("plantuml.response.bytes", "format", format.name(), "encoding", encoding)
+                .record(length);
+        if (cpuBefore >= 0) {
+            meterRegistry.summary("plantuml.response.cpu", "format", format.name(), "encoding", encoding)
+                    .record(threadCpuTime() - cpuBefore);
+        }
+    }
 
+    // CPU time of the request thread in nanoseconds, -1 when not supported
+    private static long threadCpuTime() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
     }
-}
 
+    // Malformed encoded source or unknown format
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<MessageResponse> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+                .cacheControl(NO_STORE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    // Source over max-size characters, or a body over the byte cap cut off while reading
+    @ExceptionHandler(SourceTooLargeException.class)
+    public ResponseEntity<MessageResponse> handleTooLarge(SourceTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .cacheControl(NO_STORE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    // Render queue full - tell the client when to come back
+    @ExceptionHandler(RenderRejectedException.class)
+    public ResponseEntity<MessageResponse> handleRejected(RenderRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .cacheControl(NO_STORE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    // Render or parse deadline passed, the render itself has been cancelled
+    @ExceptionHandler(RenderTimeoutException.class)
+    public ResponseEntity<RenderErrorDTO> handleTimeout(RenderTimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .cacheControl(NO_STORE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new RenderErrorDTO(e.getFormat() == null ? "PARSE_TIMEOUT" : "RENDER_TIMEOUT", e.getMessage(),
+                        e.getFormat() == null ? null : e.getFormat().name(), e.getTimeout().toMillis()));
+    }
+}
\ No newline at end of file
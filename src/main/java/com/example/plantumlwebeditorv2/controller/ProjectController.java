@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import com.example.plantumlwebeditorv2.dto.AuthDTOs.MessageResponse;
 import com.example.plantumlwebeditorv2.dto.ProjectDTO;
 import com.example.plantumlwebeditorv2.service.ProjectService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -57,6 +58,23 @@ public class ProjectController {
     }
 
 
+    // Diagram of a saved project, usually served from the stored render
+    @GetMapping("/{id}/render")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> getProjectRender(@PathVariable Long id) {
+
+        try {
+            String svg = projectService.getProjectRender(id);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("image/svg+xml"))
+                    .body(svg);
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+
+
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> updateProject(@PathVariable Long id, @Valid @RequestBody ProjectDTO projectDTO) {
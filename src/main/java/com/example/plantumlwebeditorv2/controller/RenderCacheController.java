@@ -0,0 +1,31 @@
+package com.example.plantumlwebeditorv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.dto.AuthDTOs.MessageResponse;
+import com.example.plantumlwebeditorv2.dto.RenderCacheStatsDTO;
+import com.example.plantumlwebeditorv2.service.RenderCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+
+// Admin only view of the render cache
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/admin/render-cache")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class RenderCacheController {
+    private final RenderCache renderCache;
+
+    @GetMapping
+    public ResponseEntity<RenderCacheStatsDTO> getStats() {
+        return ResponseEntity.ok(renderCache.getStats());
+    }
+
+    @DeleteMapping
+    public ResponseEntity<MessageResponse> flush() {
+        renderCache.flush();
+        return ResponseEntity.ok(new MessageResponse("Render cache flushed"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.plantumlwebeditorv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.service.ThumbnailService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+
+// Project thumbnails by content hash, public so listings can use plain <img> tags
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/thumbnails")
+@RequiredArgsConstructor
+public class ThumbnailController {
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final ThumbnailService thumbnailService;
+
+    // A hash names one image forever, browsers never need to ask again
+    @GetMapping("/{hash}")
+    public ResponseEntity<byte[]> getThumbnail(@PathVariable String hash) {
+        if (!CONTENT_HASH.matcher(hash).matches()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return thumbnailService.find(hash)
+                .map(thumbnail -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                        .eTag(hash)
+                        .contentType(MediaType.IMAGE_PNG)
+                        .body(thumbnail.getPng()))
+                // Not made yet, the listing asks again next time
+                .orElseGet(() -> ResponseEntity.notFound().cacheControl(CacheControl.noStore()).build());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+
+// Batch render DTOs
+public class BatchRenderDTOs {
+
+    @Data
+    public static class BatchRenderRequest {
+        @NotEmpty
+        @Valid
+        private List<Item> items;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        // Optional caller reference, echoed back in the result
+        private String id;
+
+        @NotNull
+        private String source;
+
+        private String format = "SVG";
+
+        private boolean optimize;
+
+        // Page of a multi-page source, see /api/plantuml/pages
+        private int page;
+
+        // GRAPHVIZ or SMETANA, the server default when missing
+        private String layout;
+    }
+
+    // One NDJSON line per item, written in completion order
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private int index;
+        private String id;
+        private int page;
+        private int status;
+        private String format;
+        private String contentType;
+        // Base64 in the JSON output
+        private byte[] data;
+        private String error;
+        private long elapsedMs;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+// Layout engine comparison DTOs
+public class LayoutBenchmarkDTOs {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Report {
+        private String format;
+        private int diagrams;
+        private int iterations;
+        private int concurrency;
+        private List<EngineResult> engines;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class EngineResult {
+        private String engine;
+        // False when the engine can't run here (no dot for Graphviz), nothing else is set then
+        private boolean available;
+        private int renders;
+        private int failures;
+        private double meanMs;
+        private double p50Ms;
+        private double p95Ms;
+        private double maxMs;
+        private double rendersPerSecond;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One output image of a source: a @startuml block or a newpage section inside one
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageInfoDTO {
+    // Global index across all blocks, the value to pass as ?page=
+    private int index;
+    private int block;
+    private int pageInBlock;
+    private String diagramType;
+    private String description;
+}
@@ -0,0 +1,36 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Live preview WebSocket messages
+public class PreviewDTOs {
+
+    // Sent by the editor on every change, a newer message supersedes older ones
+    @Data
+    public static class PreviewRequest {
+        // Editor side counter, echoed back so the client can match results
+        private long version;
+        private String source;
+        private String format = "SVG";
+        private boolean optimize;
+        private int page;
+        // GRAPHVIZ or SMETANA, the server default when missing
+        private String layout;
+        // DRAFT while typing, FULL when missing
+        private String quality;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PreviewResult {
+        private long version;
+        private int status;
+        private String contentType;
+        // SVG markup as is, PNG as base64
+        private String data;
+        private String error;
+    }
+}
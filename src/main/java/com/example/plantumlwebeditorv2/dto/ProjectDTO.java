@@ -27,4 +27,7 @@ public class ProjectDTO {
     // Set by Hibernate
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    // Listings only, set once a thumbnail of the current content exists (GET /api/thumbnails/{hash})
+    private String thumbnailHash;
 }
\ No newline at end of file
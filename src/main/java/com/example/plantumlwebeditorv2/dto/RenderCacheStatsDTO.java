@@ -0,0 +1,28 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Snapshot of the render cache for the admin endpoint
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RenderCacheStatsDTO {
+    private boolean enabled;
+    private long entries;
+    private long weightBytes;
+    private long maxWeightBytes;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long evictedBytes;
+
+    // Disk tier
+    private boolean storeEnabled;
+    private long storeEntries;
+    private long storeBytes;
+    private long storeHits;
+    private long storeEvictedSegments;
+}
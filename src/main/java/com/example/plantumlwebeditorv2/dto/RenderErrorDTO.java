@@ -0,0 +1,16 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Error body for render failures the client can act on (timeouts etc.)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RenderErrorDTO {
+    private String error;
+    private String message;
+    private String format;
+    private Long timeoutMs;
+}
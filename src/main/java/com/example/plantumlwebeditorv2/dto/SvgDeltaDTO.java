@@ -0,0 +1,18 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+// Body of a 226 response, see SvgDelta for the op format
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SvgDeltaDTO {
+    // ETag of the SVG the ops apply to
+    private String base;
+    // Length of the rebuilt SVG, lets the client check the result
+    private int length;
+    private List<Object> ops;
+}
@@ -0,0 +1,35 @@
+package com.example.plantumlwebeditorv2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+// Syntax check DTOs
+public class SyntaxCheckDTOs {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CheckResult {
+        private boolean valid;
+        // Type of each @startuml block, ERROR where it does not parse
+        private List<String> diagramTypes;
+        private List<Diagnostic> diagnostics;
+        private long elapsedMicros;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Diagnostic {
+        // 1-based line in the submitted source
+        private int line;
+        private int block;
+        // "preprocessor" or "syntax"
+        private String kind;
+        private String message;
+        // Type PlantUML assumed while parsing, null when it could not tell
+        private String diagramType;
+    }
+}
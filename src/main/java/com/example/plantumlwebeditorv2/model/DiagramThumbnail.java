@@ -0,0 +1,30 @@
+package com.example.plantumlwebeditorv2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Small PNG of a diagram, keyed by content hash so projects with the same source share one
+@Entity
+@Table(name = "diagram_thumbnails")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiagramThumbnail {
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Thumbnails are a few KB, the length only matters for databases with sized binary columns
+    @Column(nullable = false, length = 1048576)
+    private byte[] png;
+
+    private int width;
+
+    private int height;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
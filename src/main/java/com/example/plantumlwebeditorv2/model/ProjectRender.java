@@ -0,0 +1,29 @@
+package com.example.plantumlwebeditorv2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Last rendered SVG of a project, only valid while contentHash matches the project's current content
+@Entity
+@Table(name = "project_renders")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectRender {
+    // Same id as the project, one render per project
+    @Id
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(columnDefinition = "TEXT")
+    private String svg;
+
+    @Column(name = "rendered_at", nullable = false)
+    private LocalDateTime renderedAt;
+}
@@ -0,0 +1,23 @@
+package com.example.plantumlwebeditorv2.repository;
+
+import com.example.plantumlwebeditorv2.model.DiagramThumbnail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// Thumbnails by content hash
+@Repository
+public interface DiagramThumbnailRepository extends JpaRepository<DiagramThumbnail, String> {
+
+    // Which of these hashes already have a thumbnail, without loading the images
+    @Query("select t.contentHash from DiagramThumbnail t where t.contentHash in :hashes")
+    Set<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    // Every stored hash, without loading the images
+    @Query("select t.contentHash from DiagramThumbnail t")
+    List<String> findAllHashes();
+}
@@ -0,0 +1,10 @@
+package com.example.plantumlwebeditorv2.repository;
+
+import com.example.plantumlwebeditorv2.model.ProjectRender;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+// Materialized renders, keyed by project id
+@Repository
+public interface ProjectRenderRepository extends JpaRepository<ProjectRender, Long> {
+}
@@ -2,7 +2,10 @@ package com.example.plantumlwebeditorv2.repository;
 
 import com.example.plantumlwebeditorv2.model.Project;
 import com.example.plantumlwebeditorv2.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
@@ -15,4 +18,8 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
 
     // This provides security - users can only access their own projects
     Optional<Project> findByIdAndOwner(Long id, User owner);
-}
\ No newline at end of file
+
+    // Contents only, a page at a time, for the thumbnail prune
+    @Query("select p.content from Project p where p.content is not null order by p.id")
+    Slice<String> findContents(Pageable pageable);
+}
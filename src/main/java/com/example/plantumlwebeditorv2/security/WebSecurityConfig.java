@@ -7,6 +7,7 @@ import com.example.plantumlwebeditorv2.security.services.UserDetailsServiceImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -97,6 +98,14 @@ public class WebSecurityConfig {
                     // PlantUML rendering endpoints - kept public for demo
                     .requestMatchers("/api/plantuml/render").permitAll()
                     .requestMatchers("/api/plantuml/image").permitAll()
+                    .requestMatchers("/api/plantuml/pages", "/api/plantuml/pages/render").permitAll()
+                    .requestMatchers("/api/plantuml/check").permitAll()
+                    .requestMatchers("/ws/preview").permitAll()
+                    .requestMatchers(HttpMethod.GET, "/api/thumbnails/*").permitAll()
+                    .requestMatchers(HttpMethod.GET, "/api/plantuml/svg/*", "/api/plantuml/png/*").permitAll()
+
+                    // Health probes for load balancers
+                    .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
 
                     // Static resources for React frontend
                     .requestMatchers("/", "/index.html", "/static/**", "/*.ico", "/*.json", "/*.png").permitAll()
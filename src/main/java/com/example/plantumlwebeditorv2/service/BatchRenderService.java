@@ -0,0 +1,146 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.BatchRenderDTOs.Item;
+import com.example.plantumlwebeditorv2.dto.BatchRenderDTOs.ItemResult;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Renders many sources for one request on a shared fixed pool
+ * The pool's size caps batch items in flight across all batch requests, each item still goes through
+ * the render cache, the coalescer and the render executor like a single request would
+ * Items block on their render, so a work-stealing pool would add compensation threads and lift the cap
+ * Results are handed to the caller as they finish, not in request order
+ */
+@Service
+public class BatchRenderService {
+    private static final Logger logger = LoggerFactory.getLogger(BatchRenderService.class);
+
+    private final PlantUmlService plantUmlService;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService pool;
+    private final int maxItems;
+
+    public BatchRenderService(PlantUmlService plantUmlService, MeterRegistry meterRegistry,
+                              @Value("${plantuml.render.batch.concurrency:0}") int concurrency,
+                              @Value("${plantuml.render.batch.max-items:500}") int maxItems) {
+        this.plantUmlService = plantUmlService;
+        this.meterRegistry = meterRegistry;
+        this.maxItems = maxItems;
+        // 0 means one per core, items beyond that wait in the pool's queue instead of flooding the render executor
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "plantuml-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public interface ResultSink {
+        void accept(ItemResult result) throws IOException;
+    }
+
+    // Blocks until every item has been rendered and written, stops early when the sink fails (client gone)
+    public void render(List<Item> items, ResultSink sink) throws IOException {
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("Batch too large, at most " + maxItems + " items");
+        }
+        meterRegistry.summary("plantuml.render.batch.size").record(items.size());
+
+        BlockingQueue<ItemResult> finished = new LinkedBlockingQueue<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            pool.execute(() -> {
+                // Items of an abandoned batch that are still queued are dropped without rendering
+                if (!cancelled.get()) {
+                    finished.add(renderItem(index, items.get(index)));
+                }
+            });
+        }
+
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                sink.accept(finished.take());
+            }
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch render interrupted", e);
+        } catch (IOException | RuntimeException e) {
+            cancelled.set(true);
+            throw e;
+        }
+    }
+
+    // All pages of one source, each page is an item of its own
+    public void renderPages(String source, OutputFormat format, boolean optimize, String layout,
+                            ResultSink sink) throws IOException {
+        int pageCount = plantUmlService.listPages(source).size();
+        List<Item> items = new ArrayList<>(pageCount);
+        for (int page = 0; page < pageCount; page++) {
+            items.add(new Item(null, source, format.name(), optimize, page, layout));
+        }
+        render(items, sink);
+    }
+
+    // Every failure becomes the item's status, one bad diagram never fails the batch
+    private ItemResult renderItem(int index, Item item) {
+        long startedAt = System.nanoTime();
+        ItemResult result = new ItemResult();
+        result.setIndex(index);
+        result.setId(item.getId());
+        result.setPage(item.getPage());
+        try {
+            OutputFormat format = OutputFormat.valueOf(
+                    (item.getFormat() == null ? "SVG" : item.getFormat()).toUpperCase());
+            result.setFormat(format.name());
+            RenderOptions options = RenderOptions.DEFAULT.withOptimizeSvg(item.isOptimize()).withPage(item.getPage())
+                    .withLayout(item.getLayout() == null ? null : LayoutEngine.parse(item.getLayout()));
+            RenderArtifact image = plantUmlService.render(item.getSource(), format, options);
+            result.setStatus(HttpStatus.OK.value());
+            result.setContentType(format == OutputFormat.SVG ? "image/svg+xml" : "image/png");
+            result.setData(image.toByteArray());
+        } catch (SourceTooLargeException e) {
+            fail(result, HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            fail(result, HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (RenderRejectedException e) {
+            fail(result, HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+        } catch (RenderTimeoutException e) {
+            fail(result, HttpStatus.GATEWAY_TIMEOUT, e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Batch item {} failed", index, e);
+            fail(result, HttpStatus.INTERNAL_SERVER_ERROR, "Render failed");
+        }
+        result.setElapsedMs((System.nanoTime() - startedAt) / 1_000_000);
+        meterRegistry.counter("plantuml.render.batch.items", "status", String.valueOf(result.getStatus())).increment();
+        return result;
+    }
+
+    private static void fail(ItemResult result, HttpStatus status, String message) {
+        result.setStatus(status.value());
+        result.setError(message);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.plantumlwebeditorv2.service;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Kills the Graphviz processes of a cancelled render, and only those
+ * PlantUML starts dot from the render thread and blocks reading its output, interrupting the thread alone does nothing
+ * A render claims its thread before the layout, dot children are then found through the kernel's per-thread
+ * children list, so renders running next to it keep their dot. Without /proc (not Linux) nothing is killed,
+ * the interrupt and PlantUML's own dot timeout are all there is, the worker pool is the way out there
+ */
+@Service
+@RequiredArgsConstructor
+public class DotProcessReaper {
+
+    private static final Logger logger = LoggerFactory.getLogger(DotProcessReaper.class);
+
+    private static final Path THREAD_SELF = Path.of("/proc/thread-self");
+
+    private final GraphvizProbe graphvizProbe;
+
+    // Called on the render thread right before the layout, released once the layout returned
+    public Claim claim() {
+        return new Claim(currentThreadId());
+    }
+
+    // Kills the dot processes the claiming thread has running, a released claim kills nothing
+    public int kill(Claim claim) {
+        synchronized (claim) {
+            if (claim.released || claim.threadId == null) {
+                return 0;
+            }
+            List<ProcessHandle> victims = childrenOf(claim.threadId).stream()
+                    .filter(this::isDot)
+                    .toList();
+            if (victims.isEmpty()) {
+                return 0;
+            }
+            claim.killed = true;
+            for (ProcessHandle process : victims) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }
+            logger.warn("Killed {} dot process(es) of a cancelled render", victims.size());
+            return victims.size();
+        }
+    }
+
+    /*
+     * A render thread while it runs one layout
+     * release and kill share the lock, so once the layout returned the thread and its next render are left alone
+     */
+    public static final class Claim {
+        private final String threadId;
+        private boolean released;
+        private boolean killed;
+
+        private Claim(String threadId) {
+            this.threadId = threadId;
+        }
+
+        // True when dot was killed under this render, its image may be broken and must not be cached
+        public synchronized boolean release() {
+            released = true;
+            return killed;
+        }
+    }
+
+    // Kernel thread id of a platform thread, "<pid>/task/<tid>"
+    private static String currentThreadId() {
+        try {
+            return Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static List<ProcessHandle> childrenOf(String threadId) {
+        Path children = Path.of("/proc/self/task", threadId, "children");
+        try {
+            return Arrays.stream(Files.readString(children).trim().split("\\s+"))
+                    .filter(pid -> !pid.isEmpty())
+                    .map(pid -> ProcessHandle.of(Long.parseLong(pid)))
+                    .flatMap(Optional::stream)
+                    .toList();
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Could not list the children of render thread {}", threadId, e);
+            return List.of();
+        }
+    }
+
+    private boolean isDot(ProcessHandle process) {
+        String command = process.info().command().orElse(null);
+        if (command == null) {
+            return false;
+        }
+        String dotPath = graphvizProbe.getStatus().path();
+        if (dotPath != null && command.equals(dotPath)) {
+            return true;
+        }
+        String name = new File(command).getName();
+        return name.equals("dot") || name.equals("dot.exe");
+    }
+}
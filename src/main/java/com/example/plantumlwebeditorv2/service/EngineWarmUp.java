@@ -0,0 +1,120 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Renders a built-in corpus (warmup/*.puml) a few times once the application is up
+ * The first renders after a start load PlantUML's classes and fonts and run in the interpreter,
+ * several times slower than steady state, the readiness group stays down until this is done
+ * Runs on its own thread straight against the engine, past the caches and the render pool
+ */
+@Service
+public class EngineWarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(EngineWarmUp.class);
+
+    private static final String CORPUS = "classpath:warmup/*.puml";
+
+    private final PlantUmlService plantUmlService;
+    private final Timer warmUpTimer;
+    private final boolean enabled;
+    private final int iterations;
+
+    private volatile boolean finished;
+    private volatile Duration duration;
+    private volatile int renders;
+    private volatile int failures;
+
+    public EngineWarmUp(PlantUmlService plantUmlService, MeterRegistry meterRegistry,
+                        @Value("${plantuml.warmup.enabled:true}") boolean enabled,
+                        @Value("${plantuml.warmup.iterations:3}") int iterations) {
+        this.plantUmlService = plantUmlService;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.warmUpTimer = Timer.builder("plantuml.warmup.duration")
+                .description("Time the startup warm-up took")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            finished = true;
+            return;
+        }
+        Thread thread = new Thread(this::run, "plantuml-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Every diagram in both formats per iteration, optimized SVG since that's what the editor asks for
+    void run() {
+        long startedAt = System.nanoTime();
+        try {
+            List<String> corpus = loadCorpus();
+            for (int i = 0; i < iterations; i++) {
+                for (String source : corpus) {
+                    warmUp(source, OutputFormat.SVG, RenderOptions.DEFAULT.withOptimizeSvg(true));
+                    warmUp(source, OutputFormat.PNG, RenderOptions.DEFAULT);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not load the warm-up corpus: {}", e.getMessage());
+        } finally {
+            duration = Duration.ofNanos(System.nanoTime() - startedAt);
+            warmUpTimer.record(duration);
+            finished = true;
+            logger.info("Render engine warmed up in {} ms ({} renders, {} failed)", duration.toMillis(), renders, failures);
+        }
+    }
+
+    // A failing diagram only means less warming, never a readiness that stays down
+    private void warmUp(String source, OutputFormat format, RenderOptions options) {
+        try {
+            plantUmlService.renderUncached(source, format, options);
+            renders++;
+        } catch (Exception e) {
+            failures++;
+            logger.debug("Warm-up render failed: {}", e.getMessage());
+        }
+    }
+
+    // Also the corpus of the layout engine comparison
+    static List<String> loadCorpus() throws IOException {
+        List<String> corpus = new ArrayList<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(CORPUS)) {
+            corpus.add(resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+        return corpus;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getRenders() {
+        return renders;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.plantumlwebeditorv2.service;
+
+import jakarta.annotation.PostConstruct;
+import net.sourceforge.plantuml.dot.GraphvizUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Tracks whether Graphviz (dot) is usable
+ * Probed once at startup and then on a schedule, renders only read the cached status
+ */
+@Service
+public class GraphvizProbe {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphvizProbe.class);
+
+    private static final long PROBE_TIMEOUT_SECONDS = 5;
+
+    // Result of the last probe
+    public record GraphvizStatus(boolean available, String version, String path, Instant checkedAt) {
+    }
+
+    @Value("${plantuml.graphviz.dot-path:}")
+    private String configuredDotPath;
+
+    private volatile GraphvizStatus status = new GraphvizStatus(false, null, null, null);
+
+    @PostConstruct
+    public void init() {
+        probe();
+    }
+
+    @Scheduled(initialDelayString = "${plantuml.graphviz.probe-interval:PT5M}",
+            fixedDelayString = "${plantuml.graphviz.probe-interval:PT5M}")
+    public void probe() {
+        GraphvizStatus previous = status;
+        GraphvizStatus current = runProbe();
+        status = current;
+
+        // Only log changes, the probe repeats in the background
+        if (current.available() && !previous.available()) {
+            logger.info("Graphviz {} found at {}", current.version(), current.path());
+            GraphvizUtils.setDotExecutable(current.path());
+        } else if (!current.available() && (previous.available() || previous.checkedAt() == null)) {
+            logger.warn("Graphviz is not installed, needed for png generation of most diagram types");
+        }
+    }
+
+    public GraphvizStatus getStatus() {
+        return status;
+    }
+
+    public boolean isAvailable() {
+        return status.available();
+    }
+
+    private GraphvizStatus runProbe() {
+        Instant now = Instant.now();
+        File dot = findDotExecutable();
+        if (dot == null) {
+            return new GraphvizStatus(false, null, null, now);
+        }
+
+        Path outputFile = null;
+        try {
+            // Output goes to a file, reading a pipe would block past the timeout on a hung dot
+            outputFile = Files.createTempFile("dot-probe", ".txt");
+            Process process = new ProcessBuilder(dot.getAbsolutePath(), "-V")
+                    .redirectErrorStream(true)
+                    .redirectOutput(outputFile.toFile())
+                    .start();
+            if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return new GraphvizStatus(false, null, dot.getAbsolutePath(), now);
+            }
+            String output = Files.readString(outputFile, StandardCharsets.UTF_8).trim();
+            boolean ok = process.exitValue() == 0;
+            return new GraphvizStatus(ok, ok ? parseVersion(output) : null, dot.getAbsolutePath(), now);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new GraphvizStatus(false, null, dot.getAbsolutePath(), now);
+        } catch (Exception e) {
+            return new GraphvizStatus(false, null, dot.getAbsolutePath(), now);
+        } finally {
+            deleteQuietly(outputFile);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Could not delete {}", file, e);
+        }
+    }
+
+    // Explicit config, then GRAPHVIZ_DOT, then the PATH
+    private File findDotExecutable() {
+        if (configuredDotPath != null && !configuredDotPath.isBlank()) {
+            File file = new File(configuredDotPath);
+            return file.canExecute() ? file : null;
+        }
+
+        String env = System.getenv("GRAPHVIZ_DOT");
+        if (env != null && !env.isBlank() && new File(env).canExecute()) {
+            return new File(env);
+        }
+
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        for (String dir : path.split(File.pathSeparator)) {
+            File candidate = new File(dir, windows ? "dot.exe" : "dot");
+            if (candidate.isFile() && candidate.canExecute()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // "dot - graphviz version 2.43.0 (0)" -> "2.43.0"
+    static String parseVersion(String output) {
+        int idx = output.indexOf("version");
+        if (idx < 0) {
+            return output;
+        }
+        String rest = output.substring(idx + "version".length()).trim();
+        int end = rest.indexOf(' ');
+        return end < 0 ? rest : rest.substring(0, end);
+    }
+}
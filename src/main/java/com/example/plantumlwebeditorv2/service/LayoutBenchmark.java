@@ -0,0 +1,112 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.LayoutBenchmarkDTOs.EngineResult;
+import com.example.plantumlwebeditorv2.dto.LayoutBenchmarkDTOs.Report;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Graphviz against Smetana on the warm-up corpus, same diagrams, same format, same concurrency
+ * Renders go straight to the engine, past the caches and the render pool, one unmeasured pass
+ * per engine first so neither pays for class loading
+ * Admin only, it takes real CPU from the live service while it runs
+ */
+@Service
+@RequiredArgsConstructor
+public class LayoutBenchmark {
+
+    public static final int MAX_ITERATIONS = 20;
+
+    private final PlantUmlService plantUmlService;
+
+    public Report run(OutputFormat format, int iterations, int concurrency) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (iterations < 1 || iterations > MAX_ITERATIONS || concurrency < 1 || concurrency > cores) {
+            throw new IllegalArgumentException("iterations must be 1-" + MAX_ITERATIONS + ", concurrency 1-" + cores);
+        }
+        List<String> corpus = EngineWarmUp.loadCorpus();
+        List<EngineResult> results = new ArrayList<>();
+        for (LayoutEngine engine : LayoutEngine.values()) {
+            // Asking for Graphviz without dot would measure the Smetana fallback
+            if (engine == LayoutEngine.GRAPHVIZ && !plantUmlService.isGraphvizInstalled()) {
+                results.add(new EngineResult(engine.name(), false, 0, 0, 0, 0, 0, 0, 0));
+                continue;
+            }
+            results.add(measure(engine, format, corpus, iterations, concurrency));
+        }
+        return new Report(format.name(), corpus.size(), iterations, concurrency, results);
+    }
+
+    private EngineResult measure(LayoutEngine engine, OutputFormat format, List<String> corpus,
+                                 int iterations, int concurrency) {
+        RenderOptions options = RenderOptions.DEFAULT.withLayout(engine);
+        for (String source : corpus) {
+            render(source, format, options);
+        }
+
+        List<String> work = new ArrayList<>(corpus.size() * iterations);
+        for (int i = 0; i < iterations; i++) {
+            work.addAll(corpus);
+        }
+        long[] latencies = new long[work.size()];
+        int failures = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long startedAt = System.nanoTime();
+        try {
+            List<Callable<Long>> tasks = new ArrayList<>(work.size());
+            for (String source : work) {
+                tasks.add(() -> render(source, format, options));
+            }
+            // render() reports failures in its result, the futures all complete normally
+            List<Future<Long>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                long nanos = futures.get(i).resultNow();
+                if (nanos < 0) {
+                    failures++;
+                }
+                latencies[i] = Math.abs(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Layout benchmark interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        long wallNanos = System.nanoTime() - startedAt;
+
+        Arrays.sort(latencies);
+        double mean = Arrays.stream(latencies).average().orElse(0);
+        return new EngineResult(engine.name(), true, latencies.length, failures,
+                millis(mean), millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.95)),
+                millis(latencies[latencies.length - 1]), latencies.length / (wallNanos / 1e9));
+    }
+
+    // Elapsed nanos, negated when the render failed
+    private long render(String source, OutputFormat format, RenderOptions options) {
+        long startedAt = System.nanoTime();
+        try {
+            plantUmlService.renderUncached(source, format, options);
+            return Math.max(1, System.nanoTime() - startedAt);
+        } catch (Exception e) {
+            return -Math.max(1, System.nanoTime() - startedAt);
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
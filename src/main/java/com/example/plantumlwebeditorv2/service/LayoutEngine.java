@@ -0,0 +1,21 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.util.Locale;
+
+/*
+ * Layout engine for the diagrams PlantUML lays out as graphs (class, component, use case, state...)
+ * GRAPHVIZ forks the external dot process per render, SMETANA is PlantUML's in-process Java port of it
+ * Sequence, activity and the other non-graph diagrams render the same with either
+ */
+public enum LayoutEngine {
+    GRAPHVIZ, SMETANA;
+
+    // Request parameter and property value, case doesn't matter
+    public static LayoutEngine parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown layout engine: " + value);
+        }
+    }
+}
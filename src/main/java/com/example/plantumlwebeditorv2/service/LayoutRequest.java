@@ -0,0 +1,58 @@
+package com.example.plantumlwebeditorv2.service;
+
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.FileFormatOption;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.preproc.Defines;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * One PlantUML layout and encoding, everything PlantUmlService decided already resolved into plain values
+ * Runs in this JVM or is shipped over the pipe to a render worker, both end up in renderTo
+ */
+record LayoutRequest(String source, FileFormat fileFormat, int page, List<String> config) {
+
+    // Config lines go in like PlantUML's -config option, so the user's line numbers stay as they are
+    void renderTo(OutputStream out) throws IOException {
+        SourceStringReader reader = config.isEmpty()
+                ? new SourceStringReader(source)
+                : new SourceStringReader(Defines.createEmpty(), source, config);
+        reader.outputImage(out, page, new FileFormatOption(fileFormat));
+    }
+
+    // Source as length-prefixed UTF-8, writeUTF stops at 64 KB
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(fileFormat.name());
+        out.writeInt(page);
+        out.writeInt(config.size());
+        for (String line : config) {
+            out.writeUTF(line);
+        }
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static LayoutRequest readFrom(DataInputStream in) throws IOException {
+        FileFormat fileFormat = FileFormat.valueOf(in.readUTF());
+        int page = in.readInt();
+        int lines = in.readInt();
+        List<String> config = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            config.add(in.readUTF());
+        }
+        int length = in.readInt();
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Layout request cut off");
+        }
+        return new LayoutRequest(new String(bytes, StandardCharsets.UTF_8), fileFormat, page, config);
+    }
+}
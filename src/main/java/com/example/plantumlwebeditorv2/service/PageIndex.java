@@ -0,0 +1,74 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.PageInfoDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.sourceforge.plantuml.BlockUml;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.core.Diagram;
+import net.sourceforge.plantuml.error.PSystemError;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Pages of a source: every @startuml block, and every newpage section inside a block
+ * Found by preprocessing and parsing only, no layout runs, and kept per source hash
+ * Misses are parsed on the bounded ParseExecutor, never on the calling thread
+ */
+@Service
+public class PageIndex {
+
+    private final Cache<String, List<PageInfoDTO>> pages;
+    private final ParseExecutor parseExecutor;
+
+    public PageIndex(@Value("${plantuml.render.pages.cache-size:1024}") long cacheSize, ParseExecutor parseExecutor) {
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+        this.parseExecutor = parseExecutor;
+    }
+
+    public List<PageInfoDTO> pages(String source) {
+        String hash = RenderKey.of(source, PlantUmlService.OutputFormat.SVG).sourceHash();
+        List<PageInfoDTO> cached = pages.getIfPresent(hash);
+        if (cached != null) {
+            return cached;
+        }
+        // Not inside Cache.get, a rejected or timed-out parse must not hold the cache entry's lock
+        List<PageInfoDTO> scanned = parseExecutor.parse(() -> scan(source));
+        pages.put(hash, scanned);
+        return scanned;
+    }
+
+    public int pageCount(String source) {
+        return pages(source).size();
+    }
+
+    private static List<PageInfoDTO> scan(String source) {
+        List<PageInfoDTO> result = new ArrayList<>();
+        List<BlockUml> blocks = new SourceStringReader(source).getBlocks();
+        for (int block = 0; block < blocks.size(); block++) {
+            Diagram diagram = blocks.get(block).getDiagram();
+            String type = diagramType(diagram);
+            String description = diagram.getDescription().getDescription();
+            for (int page = 0; page < diagram.getNbImages(); page++) {
+                result.add(new PageInfoDTO(result.size(), block, page, type, description));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    // SequenceDiagram -> SEQUENCE, ActivityDiagram3 -> ACTIVITY, any PSystemError -> ERROR
+    static String diagramType(Diagram diagram) {
+        if (diagram instanceof PSystemError) {
+            return "ERROR";
+        }
+        String name = diagram.getClass().getSimpleName()
+                .replaceFirst("^PSystem", "")
+                .replaceFirst("Diagram\\d*$", "");
+        return name.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Small pool for preprocessing and parsing (syntax check, page index), kept apart from the render pool
+ * so per-keystroke checks never queue behind layouts. !include, loops and macros can make a parse slow,
+ * so it never runs on a Tomcat thread: a full queue is rejected at once and the caller stops waiting at
+ * the deadline. A parse that never ends keeps its thread, the pool stays bounded and later ones get 429
+ */
+@Service
+public class ParseExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final long retryAfterSeconds;
+    private final Counter rejectedCounter;
+    private final Counter timeoutCounter;
+
+    public ParseExecutor(@Value("${plantuml.render.parse.concurrency:0}") int concurrency,
+                         @Value("${plantuml.render.parse.queue-capacity:16}") int queueCapacity,
+                         @Value("${plantuml.render.parse.timeout:PT5S}") Duration timeout,
+                         @Value("${plantuml.render.executor.retry-after:PT1S}") Duration retryAfter,
+                         MeterRegistry meterRegistry) {
+        // 0 means half the cores, parses are short and the render pool needs the rest
+        int threads = concurrency > 0 ? concurrency : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.timeout = timeout;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "plantuml-parse-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.rejectedCounter = Counter.builder("plantuml.parse.rejected")
+                .description("Parses rejected because the parse queue was full")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("plantuml.parse.timeouts")
+                .description("Parses the caller stopped waiting for")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.parse.queue.depth", executor, e -> e.getQueue().size())
+                .description("Parses waiting for a parse thread")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.parse.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Parses currently running")
+                .register(meterRegistry);
+    }
+
+    // Runs the parse on the pool and waits for it, RenderRejectedException when full, RenderTimeoutException when slow
+    public <T> T parse(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new RenderRejectedException("Parse queue is full, try again later", retryAfterSeconds);
+        }
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCounter.increment();
+            throw new RenderTimeoutException(timeout);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parse interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Parse failed", cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,21 +1,72 @@
 package com.example.plantumlwebeditorv2.service;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
 import net.sourceforge.plantuml.FileFormat;
-import net.sourceforge.plantuml.FileFormatOption;
-import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.version.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.io.ByteArrayOutputStream;
+import com.example.plantumlwebeditorv2.dto.PageInfoDTO;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
+@RequiredArgsConstructor
 public class PlantUmlService {
+    private static final Logger logger = LoggerFactory.getLogger(PlantUmlService.class);
+
+    // Small diagrams fit without growing the buffer
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final RenderCache renderCache;
+    private final GraphvizProbe graphvizProbe;
+    private final RenderCoalescer renderCoalescer;
+    private final PageIndex pageIndex;
+    private final RenderMemoryBudget memoryBudget;
+    private final RenderWorkerPool workerPool;
+    private final MeterRegistry meterRegistry;
 
     @Value("${plantuml.render.max-size}")
     private int maxRenderSize;
 
+    // Deadline per request, counted from submission so queue time is included
+    @Value("${plantuml.render.timeout.svg:PT10S}")
+    private Duration svgTimeout;
+
+    @Value("${plantuml.render.timeout.png:PT20S}")
+    private Duration pngTimeout;
+
+    // Engine for requests that don't pick one
+    @Value("${plantuml.render.layout:graphviz}")
+    private String defaultLayout;
+
+    // Raster scale of draft PNGs, a quarter of the pixels to fill and encode at 0.5
+    @Value("${plantuml.render.draft.png-scale:0.5}")
+    private double draftPngScale;
+
+    // Lines PlantUML adds to every block, like its -config option, so the user's line numbers stay as they are
+    private static final List<String> SMETANA_CONFIG = List.of("!pragma layout smetana");
+
+    // Draft drops the effects that cost the most to draw, the diagram's own skinparams come later and still win
+    private static final List<String> DRAFT_CONFIG = List.of(
+            "skinparam shadowing false",
+            "skinparam roundCorner 0");
+
+    // Root element size PlantUML writes into every SVG, e.g. width="224px" height="240px"
+    private static final Pattern SVG_WIDTH = Pattern.compile("<svg\\b[^>]*?\\swidth=\"([0-9.]+)px\"");
+    private static final Pattern SVG_HEIGHT = Pattern.compile("<svg\\b[^>]*?\\sheight=\"([0-9.]+)px\"");
+    private static final int SVG_HEAD_BYTES = 2048;
+
     // png needs graphviz to work
     public enum OutputFormat {
         PNG, SVG
@@ -23,10 +74,116 @@ public class PlantUmlService {
 
     // Main image diagram generator
     public byte[] generateImage(String source, OutputFormat format) throws IOException {
-        if (source == null || source.length() > maxRenderSize) {
-            throw new IllegalArgumentException("Source code too large or null");
+        return render(source, format).toByteArray();
+    }
+
+    // Streaming entry point - callers write the artifact straight to their output stream
+    public RenderArtifact render(String source, OutputFormat format) throws IOException {
+        return render(source, format, RenderOptions.DEFAULT);
+    }
+
+    public RenderArtifact render(String source, OutputFormat format, RenderOptions options) throws IOException {
+        validateSource(source);
+
+        if (options.page() > 0 && options.page() >= pageIndex.pageCount(source)) {
+            throw new IllegalArgumentException("Page " + options.page() + " does not exist");
+        }
+
+        // Same source, format and options always give the same image
+        RenderOptions effective = effectiveOptions(format, options);
+        RenderKey key = RenderKey.of(source, format, effective);
+        RenderArtifact cached = renderCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // An in-process PNG is sized from its SVG, laid out first as a render of its own with the SVG
+        // deadline, so it doesn't eat into the PNG's. A worker draws the raster in its own heap, no size needed
+        if (format == OutputFormat.PNG && !workerPool.isEnabled() && cachedSvg(source, effective) == null) {
+            render(source, OutputFormat.SVG, effective.withOptimizeSvg(false));
+        }
+
+        // Layout runs on the bounded render pool, identical concurrent requests share one layout
+        return renderCoalescer.render(key, () -> layOut(source, format, options, effective), getTimeout(format));
+    }
+
+    /*
+     * Strong validator for the image a source renders to, computed without rendering
+     * Covers the source hash, the format, the options and the PlantUML version, so an upgrade invalidates old tags
+     */
+    public String etag(String source, OutputFormat format, RenderOptions options) {
+        validateSource(source);
+        RenderKey key = RenderKey.of(source, format, effectiveOptions(format, options));
+        return "\"" + RenderKey.hash(key.id() + ":" + Version.versionString()) + "\"";
+    }
+
+    // Pages of the source without laying anything out
+    public List<PageInfoDTO> listPages(String source) {
+        validateSource(source);
+        return pageIndex.pages(source);
+    }
+
+    // Source from a PlantUML encoded URL, inflation is capped at what max-size could ever need in UTF-8
+    public String decodeSource(String encoded) {
+        String source = PlantUmlTextDecoder.decode(encoded, Math.multiplyExact(maxRenderSize, 4));
+        validateSource(source);
+        return source;
+    }
+
+    // Most UTF-8 bytes a source within max-size can take, a char never needs more than 3
+    public int maxSourceBytes() {
+        return Math.multiplyExact(maxRenderSize, 3);
+    }
+
+    private void validateSource(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source code is null");
+        }
+        if (source.length() > maxRenderSize) {
+            throw new SourceTooLargeException(maxRenderSize, "characters");
+        }
+    }
+
+    public Duration getTimeout(OutputFormat format) {
+        return format == OutputFormat.SVG ? svgTimeout : pngTimeout;
+    }
+
+    /*
+     * Engine warm-up, the layout comparison and thumbnails: runs on the caller's thread, outside the render pool's
+     * admission, and caches nothing. A cache hit would skip exactly the code the first two measure
+     */
+    RenderArtifact renderUncached(String source, OutputFormat format, RenderOptions options) throws IOException {
+        validateSource(source);
+        return layOut(source, format, options, effectiveOptions(format, options));
+    }
+
+    // Switches that don't apply dropped, the layout engine resolved to the one that will actually run
+    private RenderOptions effectiveOptions(OutputFormat format, RenderOptions options) {
+        return options.forFormat(format).withLayout(resolveLayout(options.layout()));
+    }
+
+    // Requested engine, else the server default
+    private LayoutEngine requestedLayout(LayoutEngine requested) {
+        return requested != null ? requested : LayoutEngine.parse(defaultLayout);
+    }
+
+    // Without a usable dot every graph layout would be an error image, Smetana needs no external process
+    private LayoutEngine resolveLayout(LayoutEngine requested) {
+        LayoutEngine layout = requestedLayout(requested);
+        return layout == LayoutEngine.GRAPHVIZ && !isGraphvizInstalled() ? LayoutEngine.SMETANA : layout;
+    }
+
+    // A layout that really runs, so the fallback counts renders and not ETag or cache lookups
+    private RenderArtifact layOut(String source, OutputFormat format, RenderOptions requested,
+                                  RenderOptions effective) throws IOException {
+        if (effective.layout() != requestedLayout(requested.layout())) {
+            meterRegistry.counter("plantuml.render.layout.fallback", "from", "graphviz", "to", "smetana").increment();
         }
+        return renderImage(source, format, effective);
+    }
 
+    // Full PlantUML layout and encoding, no caching
+    private RenderArtifact renderImage(String source, OutputFormat format, RenderOptions options) throws IOException {
         FileFormat fileFormat;
         switch (format) {
             case SVG:
@@ -39,34 +196,135 @@ public class PlantUmlService {
         }
 
 
-        if (!isGraphvizInstalled()) {
-            System.out.println("graphviz is not installed, needed for png generaton.");
+        long allocatedBefore = allocatedBytes();
+
+        RenderArtifact.Buffer outputStream = layout(source, fileFormat, options);
+
+        if (allocatedBefore >= 0) {
+            meterRegistry.summary("plantuml.render.allocated.bytes", "format", format.name())
+                    .record(allocatedBytes() - allocatedBefore);
+        }
+
+        RenderArtifact rendered = outputStream.toArtifact();
+        RenderArtifact image = (options.optimizeSvg() ? optimizeSvg(rendered) : rendered).trimmed();
+
+        // Compressed once here, responses stream the stored variant
+        return meterRegistry.timer("plantuml.render.compress", "format", format.name())
+                .record(() -> image.precompress(format));
+    }
+
+    /*
+     * Heap for a PNG raster drawn in this JVM, held from layout to encoding
+     * The size comes from the SVG of the same diagram: far cheaper than the raster, usually cached already
+     * because the editor previews in SVG, and laid out ahead by render() when it isn't
+     */
+    private RenderMemoryBudget.Reservation reserveMemory(String source, FileFormat fileFormat, RenderOptions options) throws IOException {
+        if (fileFormat != FileFormat.PNG) {
+            return () -> { };
+        }
+        double[] size = svgSize(source, options.withOptimizeSvg(false));
+        double scale = options.quality() == RenderQuality.DRAFT ? draftPngScale : 1;
+        long estimate = RenderMemoryBudget.estimatePngBytes(size[0] * scale, size[1] * scale);
+        meterRegistry.summary("plantuml.render.memory.estimated.bytes").record(estimate);
+        try {
+            return memoryBudget.reserve(estimate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Render interrupted", e);
+        }
+    }
+
+    // SVG of the same diagram from the cache, optimized or not, the root keeps its size either way
+    private RenderArtifact cachedSvg(String source, RenderOptions options) {
+        RenderArtifact svg = renderCache.get(RenderKey.of(source, OutputFormat.SVG, options.withOptimizeSvg(true)));
+        return svg != null ? svg : renderCache.get(RenderKey.of(source, OutputFormat.SVG, options.withOptimizeSvg(false)));
+    }
+
+    // Width and height in px, from the cached SVG, laid out here only for uncached renders and worker fallbacks
+    // and not cached then, those must leave the cache as they found it
+    private double[] svgSize(String source, RenderOptions svgOptions) throws IOException {
+        RenderArtifact svg = cachedSvg(source, svgOptions);
+        if (svg == null) {
+            svg = renderImage(source, OutputFormat.SVG, svgOptions);
+        }
+        String head = new String(svg.buffer(), 0, Math.min(svg.length(), SVG_HEAD_BYTES), StandardCharsets.ISO_8859_1);
+        Matcher width = SVG_WIDTH.matcher(head);
+        Matcher height = SVG_HEIGHT.matcher(head);
+        if (!width.find() || !height.find()) {
+            // Unknown size counts as the largest image PlantUML would draw
+            return new double[]{Double.MAX_VALUE, Double.MAX_VALUE};
+        }
+        return new double[]{Double.parseDouble(width.group(1)), Double.parseDouble(height.group(1))};
+    }
+
+    // Layout and encoding, timed per engine and quality so they can be compared on real traffic
+    private RenderArtifact.Buffer layout(String source, FileFormat fileFormat, RenderOptions options) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        LayoutEngine layout = options.layout();
+        boolean draft = options.quality() == RenderQuality.DRAFT;
+        List<String> config = new ArrayList<>();
+        if (layout == LayoutEngine.SMETANA) {
+            config.addAll(SMETANA_CONFIG);
         }
+        if (draft) {
+            config.addAll(DRAFT_CONFIG);
+            if (fileFormat == FileFormat.PNG) {
+                // SVG scales for free in the browser, PNG pixels have to be drawn and encoded
+                config.add("scale " + draftPngScale);
+            }
+        }
+        LayoutRequest request = new LayoutRequest(source, fileFormat, options.page(), config);
+        // In a worker JVM when the pool is on, its raster never touches this heap
+        RenderArtifact.Buffer outputStream = workerPool.isEnabled() ? workerPool.render(request) : null;
+        if (outputStream == null) {
+            // Here when the pool is off or has no worker running, PNG rasters wait for their share of the budget
+            try (RenderMemoryBudget.Reservation reservation = reserveMemory(source, fileFormat, options)) {
+                sample = Timer.start(meterRegistry);
+                outputStream = new RenderArtifact.Buffer(INITIAL_BUFFER_SIZE);
+                request.renderTo(outputStream);
+                outputStream.close();
+            }
+        }
+        sample.stop(meterRegistry.timer("plantuml.render.layout", "format", fileFormat.name(),
+                "engine", layout.name().toLowerCase(), "quality", options.quality().name().toLowerCase()));
+        return outputStream;
+    }
 
-        SourceStringReader reader = new SourceStringReader(source);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        reader.outputImage(outputStream, new FileFormatOption(fileFormat));
-        outputStream.close();
+    // Size pass over the SVG, savings are recorded per diagram
+    private RenderArtifact optimizeSvg(RenderArtifact svg) {
+        RenderArtifact optimized = SvgOptimizer.optimize(svg);
+        long saved = svg.length() - optimized.length();
+        meterRegistry.summary("plantuml.svg.optimize.saved.bytes").record(saved);
+        meterRegistry.summary("plantuml.svg.optimize.saved.ratio").record(svg.length() == 0 ? 0 : (double) saved / svg.length());
+        logger.debug("SVG optimized from {} to {} bytes", svg.length(), optimized.length());
+        return optimized;
+    }
 
-        return outputStream.toByteArray();
+    // Heap allocated by the current thread so far, -1 when the JVM can't tell
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean
+                && threadBean.isThreadAllocatedMemoryEnabled()) {
+            return threadBean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
     }
 
     // Render diagram as a string
     public String renderDiagram(String source, OutputFormat format) throws IOException {
         if (format == OutputFormat.SVG) {
-            return new String(generateImage(source, OutputFormat.SVG), StandardCharsets.UTF_8);
+            return render(source, OutputFormat.SVG).toString(StandardCharsets.UTF_8);
         } else {
             throw new IllegalArgumentException("Only SVG format can be rendered as string");
         }
     }
 
-    // Check in generateImage
+    // Last background probe result, see GraphvizProbe
     public boolean isGraphvizInstalled() {
-        try {
-            Process process = Runtime.getRuntime().exec(new String[] {"dot", "-V"});
-            return process.waitFor() == 0;
-        } catch (Exception e) {
-            return false;
-        }
+        return graphvizProbe.isAvailable();
+    }
+
+    // True while the layout asked for (or the default) is swapped for Smetana because dot is missing
+    public boolean isLayoutFallback(RenderOptions options) {
+        return resolveLayout(options.layout()) != requestedLayout(options.layout());
     }
 }
\ No newline at end of file
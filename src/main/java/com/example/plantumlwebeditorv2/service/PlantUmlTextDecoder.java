@@ -0,0 +1,110 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Decoder for the standard PlantUML text encoding used in URLs (raw deflate + PlantUML's base64 alphabet)
+ * Also accepts the "~1" prefix of the same encoding and "~h" hex encoded text, like the official server
+ * Inflation is bounded, so a small URL can't expand into an arbitrarily large source
+ * The encoder drops @startuml/@enduml, they are put back when the text has no @start line
+ */
+public final class PlantUmlTextDecoder {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_";
+    private static final byte[] LOOKUP = new byte[128];
+
+    static {
+        Arrays.fill(LOOKUP, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            LOOKUP[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+    private PlantUmlTextDecoder() {
+    }
+
+    public static String decode(String encoded, int maxBytes) {
+        if (encoded == null || encoded.isEmpty()) {
+            throw new IllegalArgumentException("Encoded source is empty");
+        }
+        String source;
+        if (encoded.startsWith("~h")) {
+            source = decodeHex(encoded.substring(2), maxBytes);
+        } else {
+            String text = encoded.startsWith("~1") ? encoded.substring(2) : encoded;
+            source = inflate(decodeBase64(text), maxBytes);
+        }
+        return source.stripLeading().startsWith("@start") ? source : "@startuml\n" + source + "\n@enduml";
+    }
+
+    // 4 characters to 3 bytes, a trailing partial group keeps its whole bytes
+    static byte[] decodeBase64(String text) {
+        int length = text.length();
+        byte[] out = new byte[length * 3 / 4];
+        int pos = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int value = c < 128 ? LOOKUP[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid character in encoded source at " + i);
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[pos++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        return pos == out.length ? out : Arrays.copyOf(out, pos);
+    }
+
+    private static String inflate(byte[] compressed, int maxBytes) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[Math.min(maxBytes, Math.max(256, compressed.length * 4))];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (length >= maxBytes) {
+                        throw new SourceTooLargeException(maxBytes);
+                    }
+                    out = Arrays.copyOf(out, (int) Math.min(maxBytes, length * 2L));
+                }
+                int read = inflater.inflate(out, length, out.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Encoder padding may cut the stream right at its end marker, take what was inflated
+                    break;
+                }
+                length += read;
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Encoded source is not valid deflate data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String decodeHex(String hex, int maxBytes) {
+        if (hex.length() % 2 != 0 || hex.length() / 2 > maxBytes) {
+            throw new IllegalArgumentException("Invalid hex encoded source");
+        }
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex encoded source");
+            }
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return new String(out, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.plantumlwebeditorv2.service;
+
+// Published inside the save/update transaction, handled once it commits
+public record ProjectContentChangedEvent(Long projectId, String content) {
+}
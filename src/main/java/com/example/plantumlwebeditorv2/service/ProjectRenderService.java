@@ -0,0 +1,79 @@
+package com.example.plantumlwebeditorv2.service;
+
+import lombok.RequiredArgsConstructor;
+import com.example.plantumlwebeditorv2.model.Project;
+import com.example.plantumlwebeditorv2.model.ProjectRender;
+import com.example.plantumlwebeditorv2.repository.ProjectRenderRepository;
+import com.example.plantumlwebeditorv2.repository.ProjectRepository;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/*
+ * Keeps a rendered SVG next to each project so opening it doesn't need a render
+ * Refreshed in the background after a commit that changed the content
+ */
+@Service
+@RequiredArgsConstructor
+public class ProjectRenderService {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectRenderService.class);
+
+    private final ProjectRenderRepository projectRenderRepository;
+    private final ProjectRepository projectRepository;
+    private final PlantUmlService plantUmlService;
+
+    // Same hash as the render cache key
+    public static String contentHash(String content) {
+        return RenderKey.of(content, OutputFormat.SVG).sourceHash();
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onContentChanged(ProjectContentChangedEvent event) {
+        refresh(event.projectId(), event.content());
+    }
+
+    void refresh(Long projectId, String content) {
+        if (content == null || content.isBlank()) {
+            projectRenderRepository.deleteById(projectId);
+            return;
+        }
+
+        String hash = contentHash(content);
+        try {
+            String svg = plantUmlService.renderDiagram(content, OutputFormat.SVG);
+
+            // A newer save may have landed meanwhile, its own event stores that version
+            Optional<Project> project = projectRepository.findById(projectId);
+            if (project.isEmpty() || project.get().getContent() == null
+                    || !hash.equals(contentHash(project.get().getContent()))) {
+                return;
+            }
+            projectRenderRepository.save(new ProjectRender(projectId, hash, svg, LocalDateTime.now()));
+
+        } catch (Exception e) {
+            logger.warn("Could not refresh render of project {}: {}", projectId, e.getMessage());
+        }
+    }
+
+    // Stored SVG if it was rendered from exactly this content
+    public Optional<String> findCurrent(Long projectId, String content) {
+        if (content == null) {
+            return Optional.empty();
+        }
+        String hash = contentHash(content);
+        return projectRenderRepository.findById(projectId)
+                .filter(render -> hash.equals(render.getContentHash()))
+                .map(ProjectRender::getSvg);
+    }
+
+    public void delete(Long projectId) {
+        projectRenderRepository.deleteById(projectId);
+    }
+}
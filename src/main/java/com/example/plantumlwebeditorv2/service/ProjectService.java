@@ -6,9 +6,16 @@ import com.example.plantumlwebeditorv2.dto.ProjectDTO;
 import com.example.plantumlwebeditorv2.model.Project;
 import com.example.plantumlwebeditorv2.model.User;
 import com.example.plantumlwebeditorv2.repository.ProjectRepository;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -16,6 +23,10 @@ import java.util.stream.Collectors;
 public class ProjectService {
     private final ProjectRepository projectRepository;
     private final UserService userService;
+    private final ProjectRenderService projectRenderService;
+    private final PlantUmlService plantUmlService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThumbnailService thumbnailService;
 
     @Transactional
     public ProjectDTO saveProject(ProjectDTO projectDTO) {
@@ -30,6 +41,9 @@ public class ProjectService {
         );
 
         Project savedProject = projectRepository.save(project);
+        if (savedProject.getContent() != null) {
+            eventPublisher.publishEvent(new ProjectContentChangedEvent(savedProject.getId(), savedProject.getContent()));
+        }
         return mapToDTO(savedProject);
     }
 
@@ -37,9 +51,33 @@ public class ProjectService {
     public List<ProjectDTO> getUserProjects() {
         User currentUser = userService.getCurrentUser();
 
-        return projectRepository.findByOwner(currentUser).stream()
+        List<ProjectDTO> projects = projectRepository.findByOwner(currentUser).stream()
                 .map(this::mapToDTO)
                 .collect(Collectors.toList());
+        addThumbnails(projects);
+        return projects;
+    }
+
+    // One lookup for the whole listing, projects still missing a thumbnail get one queued
+    private void addThumbnails(List<ProjectDTO> projects) {
+        Map<Long, String> hashes = new HashMap<>();
+        for (ProjectDTO project : projects) {
+            if (project.getContent() != null && !project.getContent().isBlank()) {
+                hashes.put(project.getId(), ProjectRenderService.contentHash(project.getContent()));
+            }
+        }
+        Set<String> existing = thumbnailService.existing(hashes.values());
+        for (ProjectDTO project : projects) {
+            String hash = hashes.get(project.getId());
+            if (hash == null) {
+                continue;
+            }
+            if (existing.contains(hash)) {
+                project.setThumbnailHash(hash);
+            } else {
+                thumbnailService.scheduleIfIdle(project.getId());
+            }
+        }
     }
 
 
@@ -82,6 +120,10 @@ public class ProjectService {
         }
 
         if (projectDTO.getContent() != null) {
+            // Stored render is refreshed after commit, only when the diagram actually changed
+            if (!Objects.equals(project.getContent(), projectDTO.getContent())) {
+                eventPublisher.publishEvent(new ProjectContentChangedEvent(id, projectDTO.getContent()));
+            }
             project.setContent(projectDTO.getContent());
         }
 
@@ -98,6 +140,25 @@ public class ProjectService {
                 .orElseThrow(() -> new RuntimeException("Project not found"));
 
         projectRepository.delete(project);
+        projectRenderService.delete(id);
+    }
+
+    // Rendered SVG of a project, served from the stored render when it is up to date
+    @Transactional(readOnly = true)
+    public String getProjectRender(Long id) throws IOException {
+        User currentUser = userService.getCurrentUser();
+        Project project = projectRepository.findByIdAndOwner(id, currentUser)
+                .orElseThrow(() -> new RuntimeException("Project not found"));
+
+        String stored = projectRenderService.findCurrent(id, project.getContent()).orElse(null);
+        if (stored != null) {
+            return stored;
+        }
+
+        // Missing or stale, render now and let the listener store it
+        String svg = plantUmlService.renderDiagram(project.getContent(), OutputFormat.SVG);
+        eventPublisher.publishEvent(new ProjectContentChangedEvent(id, project.getContent()));
+        return svg;
     }
 
     // Convert project to dto for API response
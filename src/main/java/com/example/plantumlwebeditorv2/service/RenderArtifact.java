@@ -0,0 +1,119 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Rendered image bytes as produced by PlantUML
+ * Wraps the render buffer directly and is written straight to the response, trimmed once before it is cached
+ * Text formats also carry a gzip variant, compressed once when the artifact is built and served as is
+ * Treated as immutable once built
+ */
+public final class RenderArtifact {
+
+    private final byte[] buffer;
+    private final int length;
+    private final byte[] gzip;
+
+    public RenderArtifact(byte[] buffer, int length) {
+        this(buffer, length, null);
+    }
+
+    private RenderArtifact(byte[] buffer, int length, byte[] gzip) {
+        this.buffer = buffer;
+        this.length = length;
+        this.gzip = gzip;
+    }
+
+    public static RenderArtifact of(byte[] bytes) {
+        return new RenderArtifact(bytes, bytes.length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // Memory actually held, used for cache weighing
+    public int capacity() {
+        return buffer.length + (gzip != null ? gzip.length : 0);
+    }
+
+    // Backing array for in-package passes that read the bytes in place, valid up to length()
+    byte[] buffer() {
+        return buffer;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    public boolean hasGzip() {
+        return gzip != null;
+    }
+
+    public int gzipLength() {
+        return gzip.length;
+    }
+
+    public void writeGzipTo(OutputStream out) throws IOException {
+        out.write(gzip);
+    }
+
+    public static boolean isCompressible(OutputFormat format) {
+        return format != OutputFormat.PNG;
+    }
+
+    /*
+     * Adds the gzip variant for formats that compress, PNG is already deflated and is returned unchanged
+     * Compressed at the highest level since it is paid once per render and reused for every response
+     */
+    public RenderArtifact precompress(OutputFormat format) {
+        if (gzip != null || !isCompressible(format)) {
+            return this;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(buffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new RenderArtifact(buffer, length, compressed.toByteArray());
+    }
+
+    // Always a copy, the artifact may be shared through the render cache
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    // Same bytes in an exactly sized buffer, so a cached artifact neither holds nor weighs the render's slack
+    public RenderArtifact trimmed() {
+        return length == buffer.length ? this : new RenderArtifact(Arrays.copyOf(buffer, length), length, gzip);
+    }
+
+    public String toString(Charset charset) {
+        return new String(buffer, 0, length, charset);
+    }
+
+    // Output stream for the renderer that hands over its buffer instead of copying it
+    static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int initialSize) {
+            super(initialSize);
+        }
+
+        RenderArtifact toArtifact() {
+            return new RenderArtifact(buf, count);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.RenderCacheStatsDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+ * In-memory cache of rendered diagrams in front of the PlantUML engine
+ * Bounded by total bytes instead of entry count, a handful of large PNGs should not push out hundreds of small SVGs
+ * Caffeine's W-TinyLFU policy keeps frequently requested diagrams over one-off renders
+ * Misses fall through to the on-disk RenderStore, hits there are pulled back into memory
+ * Entry weight includes the pre-compressed variant held next to the raw bytes
+ */
+@Service
+public class RenderCache {
+
+    // Rough per-entry bookkeeping cost (key, hash string, node)
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Cache<RenderKey, RenderArtifact> cache;
+    private final RenderStore renderStore;
+    private final long maxBytes;
+    private final boolean enabled;
+
+    public RenderCache(@Value("${plantuml.render.cache.max-bytes:67108864}") long maxBytes,
+                       @Value("${plantuml.render.cache.enabled:true}") boolean enabled,
+                       RenderStore renderStore) {
+        this.maxBytes = maxBytes;
+        this.enabled = enabled;
+        this.renderStore = renderStore;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((RenderKey key, RenderArtifact image) -> image.capacity() + ENTRY_OVERHEAD_BYTES)
+                .recordStats()
+                .build();
+    }
+
+    // Returns null on a miss
+    public RenderArtifact get(RenderKey key) {
+        RenderArtifact image = enabled ? cache.getIfPresent(key) : null;
+        if (image == null) {
+            image = renderStore.get(key);
+            if (image != null) {
+                // The disk tier keeps raw bytes only, compress once on the way back into memory
+                image = image.precompress(key.format());
+                if (enabled) {
+                    cache.put(key, image);
+                }
+            }
+        }
+        return image;
+    }
+
+    public void put(RenderKey key, RenderArtifact image) {
+        if (enabled) {
+            cache.put(key, image);
+        }
+        renderStore.put(key, image);
+    }
+
+    // Clears both tiers
+    public void flush() {
+        cache.invalidateAll();
+        cache.cleanUp();
+        renderStore.clear();
+    }
+
+    public RenderCacheStatsDTO getStats() {
+        // Apply pending writes so the weight is current
+        cache.cleanUp();
+        CacheStats stats = cache.stats();
+        long weight = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+
+        return new RenderCacheStatsDTO(
+                enabled,
+                cache.estimatedSize(),
+                weight,
+                maxBytes,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                stats.evictionWeight(),
+                renderStore.isEnabled(),
+                renderStore.getEntryCount(),
+                renderStore.getSizeBytes(),
+                renderStore.getHits(),
+                renderStore.getEvictedSegments()
+        );
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Single-flight for renders: identical requests that arrive while a layout is running share it
+ * Every waiter keeps its own deadline, the layout is only cancelled once the last waiter has given up
+ * Successful results go into the render cache before the flight is removed, so there is no gap where neither has it
+ */
+@Service
+public class RenderCoalescer {
+
+    private final RenderCache renderCache;
+    private final RenderExecutor renderExecutor;
+    private final DotProcessReaper dotProcessReaper;
+    private final MeterRegistry meterRegistry;
+    private final Counter coalescedCounter;
+
+    private final ConcurrentHashMap<RenderKey, Flight> inFlight = new ConcurrentHashMap<>();
+
+    public RenderCoalescer(RenderCache renderCache, RenderExecutor renderExecutor,
+                           DotProcessReaper dotProcessReaper, MeterRegistry meterRegistry) {
+        this.renderCache = renderCache;
+        this.renderExecutor = renderExecutor;
+        this.dotProcessReaper = dotProcessReaper;
+        this.meterRegistry = meterRegistry;
+        this.coalescedCounter = Counter.builder("plantuml.render.coalesced")
+                .description("Renders that joined an identical in-flight render")
+                .register(meterRegistry);
+    }
+
+    // One layout in flight per key
+    private static final class Flight {
+        final CompletableFuture<RenderArtifact> result = new CompletableFuture<>();
+        volatile Future<?> task;
+        volatile DotProcessReaper.Claim dotClaim;
+        int waiters;
+        boolean abandoned;
+
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        // True when the caller was the last waiter
+        synchronized boolean leave() {
+            waiters--;
+            if (waiters == 0 && !result.isDone()) {
+                abandoned = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public RenderArtifact render(RenderKey key, Callable<RenderArtifact> layout, Duration timeout) throws IOException {
+        Flight[] created = new Flight[1];
+        Flight flight = inFlight.compute(key, (k, existing) -> {
+            if (existing != null && existing.join()) {
+                return existing;
+            }
+            Flight fresh = new Flight();
+            fresh.join();
+            created[0] = fresh;
+            return fresh;
+        });
+
+        if (flight == created[0]) {
+            start(key, flight, layout);
+        } else {
+            coalescedCounter.increment();
+        }
+        return await(key, flight, timeout);
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void start(RenderKey key, Flight flight, Callable<RenderArtifact> layout) {
+        try {
+            flight.task = renderExecutor.submit(() -> {
+                DotProcessReaper.Claim claim = dotProcessReaper.claim();
+                flight.dotClaim = claim;
+                RenderArtifact image;
+                try {
+                    image = layout.call();
+                } catch (Throwable t) {
+                    claim.release();
+                    inFlight.remove(key, flight);
+                    flight.result.completeExceptionally(t);
+                    return null;
+                }
+                // Our dot was killed under us, don't keep a possibly broken image
+                if (!claim.release()) {
+                    renderCache.put(key, image);
+                }
+                inFlight.remove(key, flight);
+                flight.result.complete(image);
+                return null;
+            });
+        } catch (RenderRejectedException e) {
+            // Followers that already joined get the same rejection
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private RenderArtifact await(RenderKey key, Flight flight, Duration timeout) throws IOException {
+        try {
+            return flight.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(key, flight);
+            meterRegistry.counter("plantuml.render.timeouts", "format", key.format().name()).increment();
+            throw new RenderTimeoutException(key.format(), timeout);
+        } catch (InterruptedException e) {
+            abandon(key, flight);
+            Thread.currentThread().interrupt();
+            throw new IOException("Render interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Render failed", cause);
+        }
+    }
+
+    // Last waiter gone: drop a queued render, or interrupt a running one and kill its dot process
+    private void abandon(RenderKey key, Flight flight) {
+        if (!flight.leave()) {
+            return;
+        }
+        inFlight.remove(key, flight);
+        // Kill before the interrupt, an interrupted layout releases its claim and the kill would find nothing
+        DotProcessReaper.Claim claim = flight.dotClaim;
+        if (claim != null) {
+            dotProcessReaper.kill(claim);
+        }
+        Future<?> task = flight.task;
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Dedicated pool for PlantUML layouts so a burst of big diagrams cannot take every Tomcat thread
+ * At most `concurrency` renders run at once and `queue-capacity` wait, anything beyond that is rejected at once
+ */
+@Service
+public class RenderExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public RenderExecutor(@Value("${plantuml.render.executor.concurrency:0}") int concurrency,
+                          @Value("${plantuml.render.executor.queue-capacity:32}") int queueCapacity,
+                          @Value("${plantuml.render.executor.retry-after:PT1S}") Duration retryAfter,
+                          MeterRegistry meterRegistry) {
+        // 0 means one render per core
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "plantuml-render-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.waitTimer = Timer.builder("plantuml.render.queue.wait")
+                .description("Time renders spend waiting for a render thread")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("plantuml.render.rejected")
+                .description("Renders rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.render.queue.depth", executor, e -> e.getQueue().size())
+                .description("Renders waiting for a render thread")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.render.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Renders currently running")
+                .register(meterRegistry);
+    }
+
+    // Queues the task or fails fast with RenderRejectedException
+    public <T> Future<T> submit(Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new RenderRejectedException("Render queue is full, try again later", retryAfterSeconds);
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/*
+ * Content address of a render: hash of the source plus the output format and render options
+ * PlantUML embeds the source as written in plain SVGs and in PNG metadata, so only optimized SVGs,
+ * which have it stripped, hash the normalized source and share entries across cosmetic edits.
+ * The others only ignore line endings, which never reach the output
+ */
+public record RenderKey(String sourceHash, OutputFormat format, RenderOptions options) {
+
+    public static RenderKey of(String source, OutputFormat format) {
+        return of(source, format, RenderOptions.DEFAULT);
+    }
+
+    public static RenderKey of(String source, OutputFormat format, RenderOptions options) {
+        boolean sourceStripped = format == OutputFormat.SVG && options.optimizeSvg();
+        return new RenderKey(hash(sourceStripped ? normalize(source) : SourceNormalizer.unifyLineEndings(source)), format, options);
+    }
+
+    // Stable string form, used as the key of the on-disk store
+    public String id() {
+        return sourceHash + ":" + format.name() + options.idSuffix();
+    }
+
+    // Cosmetic differences never change the diagram, see SourceNormalizer
+    static String normalize(String source) {
+        return SourceNormalizer.normalize(source);
+    }
+
+    static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
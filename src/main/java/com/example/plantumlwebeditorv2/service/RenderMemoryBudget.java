@@ -0,0 +1,96 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.sourceforge.plantuml.dot.GraphvizUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Heap budget for PNG rasters, PlantUML paints the whole image into one BufferedImage before encoding it
+ * Every PNG render holds its estimated raster size while it runs, so a few big diagrams at once take turns
+ * instead of running the JVM out of memory. The character limit on the source says nothing about this
+ */
+@Service
+public class RenderMemoryBudget {
+
+    // TYPE_INT_ARGB raster
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // Permits are KiB, so budgets of many GB still fit the semaphore
+    private static final int UNIT = 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+    private final Duration maxWait;
+    private final long retryAfterSeconds;
+    private final Counter refusedCounter;
+    private final Counter rejectedCounter;
+
+    public RenderMemoryBudget(@Value("${plantuml.render.memory.budget-bytes:0}") long budgetBytes,
+                              @Value("${plantuml.render.memory.max-wait:PT5S}") Duration maxWait,
+                              @Value("${plantuml.render.executor.retry-after:PT1S}") Duration retryAfter,
+                              MeterRegistry meterRegistry) {
+        // 0 means a quarter of the maximum heap
+        long bytes = budgetBytes > 0 ? budgetBytes : Runtime.getRuntime().maxMemory() / 4;
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / UNIT));
+        // Fair, a big render waiting for room isn't overtaken by small ones forever
+        this.permits = new Semaphore(totalPermits, true);
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        this.refusedCounter = Counter.builder("plantuml.render.memory.refused")
+                .description("PNG renders refused because their raster is larger than the whole budget")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("plantuml.render.memory.rejected")
+                .description("PNG renders rejected because the budget stayed busy for max-wait")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.render.memory.reserved.bytes", this, RenderMemoryBudget::getReservedBytes)
+                .description("Heap currently reserved by running PNG renders")
+                .register(meterRegistry);
+    }
+
+    // Raster of a width x height PNG, PlantUML crops each side at its image limit
+    public static long estimatePngBytes(double width, double height) {
+        int limit = GraphvizUtils.getenvImageLimit();
+        long pixels = (long) Math.ceil(Math.min(width, limit)) * (long) Math.ceil(Math.min(height, limit));
+        return pixels * BYTES_PER_PIXEL;
+    }
+
+    /*
+     * Holds the estimate until the reservation is closed
+     * An image bigger than the whole budget could never fit and is refused, a busy budget is waited for up to max-wait
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        long units = Math.max(1, (bytes + UNIT - 1) / UNIT);
+        if (units > totalPermits) {
+            refusedCounter.increment();
+            throw new IllegalArgumentException("Diagram too large to render as PNG, render it as SVG instead");
+        }
+        int needed = (int) units;
+        if (!permits.tryAcquire(needed, maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+            rejectedCounter.increment();
+            throw new RenderRejectedException("Not enough render memory free, try again later", retryAfterSeconds);
+        }
+        return () -> permits.release(needed);
+    }
+
+    public long getBudgetBytes() {
+        return (long) totalPermits * UNIT;
+    }
+
+    public long getReservedBytes() {
+        return (long) (totalPermits - permits.availablePermits()) * UNIT;
+    }
+
+    // Closing releases the reservation, no checked exception so it fits try-with-resources anywhere
+    @FunctionalInterface
+    public interface Reservation extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
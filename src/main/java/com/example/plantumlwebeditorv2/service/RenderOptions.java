@@ -0,0 +1,48 @@
+package com.example.plantumlwebeditorv2.service;
+
+/*
+ * Per-request switches that change the rendered bytes, each combination is cached separately
+ * A null layout means the server default, PlantUmlService resolves it before building the cache key
+ * A null quality is FULL
+ */
+public record RenderOptions(boolean optimizeSvg, int page, LayoutEngine layout, RenderQuality quality) {
+
+    public static final RenderOptions DEFAULT = new RenderOptions(false, 0, null, RenderQuality.FULL);
+
+    public RenderOptions {
+        if (page < 0) {
+            throw new IllegalArgumentException("Page index must not be negative");
+        }
+        if (quality == null) {
+            quality = RenderQuality.FULL;
+        }
+    }
+
+    public RenderOptions withOptimizeSvg(boolean optimizeSvg) {
+        return new RenderOptions(optimizeSvg, page, layout, quality);
+    }
+
+    public RenderOptions withPage(int page) {
+        return new RenderOptions(optimizeSvg, page, layout, quality);
+    }
+
+    public RenderOptions withLayout(LayoutEngine layout) {
+        return new RenderOptions(optimizeSvg, page, layout, quality);
+    }
+
+    public RenderOptions withQuality(RenderQuality quality) {
+        return new RenderOptions(optimizeSvg, page, layout, quality);
+    }
+
+    // Drops switches that don't apply to the format, so they don't split the cache
+    public RenderOptions forFormat(PlantUmlService.OutputFormat format) {
+        return format == PlantUmlService.OutputFormat.SVG ? this : withOptimizeSvg(false);
+    }
+
+    // Appended to the cache id, empty for the defaults so existing ids stay valid (Graphviz and full quality were the only ones)
+    String idSuffix() {
+        return (optimizeSvg ? ":opt" : "") + (page > 0 ? ":p" + page : "")
+                + (layout == LayoutEngine.SMETANA ? ":smetana" : "")
+                + (quality == RenderQuality.DRAFT ? ":draft" : "");
+    }
+}
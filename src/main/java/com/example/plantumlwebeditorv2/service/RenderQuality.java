@@ -0,0 +1,21 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.util.Locale;
+
+/*
+ * Fidelity tier of a render
+ * DRAFT is for the live preview while typing: no shadows or rounded corners and a half-scale PNG
+ * FULL is what gets saved and exported
+ */
+public enum RenderQuality {
+    FULL, DRAFT;
+
+    // Request parameter value, case doesn't matter
+    public static RenderQuality parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown render quality: " + value);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.plantumlwebeditorv2.service;
+
+// Thrown when the render queue is full, mapped to 429 Too Many Requests
+public class RenderRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RenderRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
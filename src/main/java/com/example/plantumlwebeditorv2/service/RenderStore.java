@@ -0,0 +1,519 @@
+package com.example.plantumlwebeditorv2.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.plantuml.version.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/*
+ * Disk tier of the render cache, survives restarts
+ *
+ * Renders are appended to segment files (segment-000001.dat, ...) and found again through an in-memory index
+ * that is rebuilt by scanning the segments at startup. Reads go through memory mapped segment regions.
+ * Entries read from an old segment are copied forward to the active one, so old segments end up holding only
+ * cold or dead entries: they are compacted when mostly dead and the least recently used one is dropped
+ * when the store is over its size cap.
+ *
+ * Output depends on the PlantUML version, so every version gets its own subdirectory and older ones are removed.
+ * The same goes for what a RenderKey hashes, KEY_LAYOUT is part of the directory name.
+ *
+ * Record layout: magic | key length (short) | key | data length (int) | crc32 of data (int) | data
+ */
+@Service
+public class RenderStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderStore.class);
+
+    private static final int MAGIC = 0x504C5552;
+    // Bumped whenever RenderKey changes what its hash covers, 2: sources with embedded text hashed unnormalized
+    private static final int KEY_LAYOUT = 2;
+    private static final int HEADER_FIXED_BYTES = 4 + 2 + 4 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    // Entries in the newest segments are never promoted
+    private static final int PROMOTE_DISTANCE = 2;
+    // Sealed segments with less live data than this get rewritten
+    private static final double COMPACT_LIVE_RATIO = 0.5;
+
+    private final boolean enabled;
+    private final Path rootDirectory;
+    private final long maxBytes;
+    private final long segmentBytes;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "plantuml-render-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictedSegments = new AtomicLong();
+
+    private Path directory;
+    private volatile Segment active;
+
+    // Where an entry's data lives, recordLength includes the header for live space accounting
+    private record Location(int segmentId, int offset, int length, int recordLength, int crc) {
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        volatile MappedByteBuffer mapped;
+        volatile long size;
+        volatile long liveBytes;
+        volatile long lastAccess;
+
+        Segment(int id, Path path, FileChannel channel) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        // Maps the file again when data was appended after the last mapping
+        MappedByteBuffer mapping(long needed) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || current.capacity() < needed) {
+                current = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mapped = current;
+            }
+            return current;
+        }
+    }
+
+    public RenderStore(@Value("${plantuml.render.store.enabled:false}") boolean enabled,
+                       @Value("${plantuml.render.store.directory:render-store}") String directory,
+                       @Value("${plantuml.render.store.max-bytes:536870912}") long maxBytes,
+                       @Value("${plantuml.render.store.segment-bytes:67108864}") long segmentBytes) {
+        this.enabled = enabled;
+        this.rootDirectory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            directory = rootDirectory.resolve("v" + Version.versionString().replaceAll("[^0-9A-Za-z.]", "_")
+                    + "-k" + KEY_LAYOUT);
+            Files.createDirectories(directory);
+            removeOtherVersions();
+
+            for (Path path : listSegments()) {
+                Segment segment = openSegment(path);
+                // Registered first, a record replaced within this same segment must find it to count as dead
+                segments.put(segment.id, segment);
+                scan(segment);
+            }
+            active = segments.values().stream().max(Comparator.comparingInt(s -> s.id)).orElse(null);
+            if (active == null || active.size >= segmentBytes) {
+                active = createSegment(active == null ? 1 : active.id + 1);
+            }
+            logger.info("Render store opened at {} with {} entries in {} segment(s)",
+                    directory, index.size(), segments.size());
+        } catch (IOException e) {
+            // The store is only a cache, run without it rather than failing startup
+            logger.error("Could not open render store at {}, continuing without it", rootDirectory, e);
+            closeAll();
+            active = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && active != null;
+    }
+
+    // Returns null on a miss
+    public RenderArtifact get(RenderKey key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Location location = index.get(key.id());
+        Segment segment = location == null ? null : segments.get(location.segmentId());
+        if (segment == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            byte[] data = read(segment, location);
+            if (data == null) {
+                index.remove(key.id(), location);
+                misses.incrementAndGet();
+                return null;
+            }
+            segment.lastAccess = System.currentTimeMillis();
+            hits.incrementAndGet();
+            if (segment.id <= active.id - PROMOTE_DISTANCE) {
+                submit(() -> promote(key.id(), location, data));
+            }
+            return RenderArtifact.of(data);
+        } catch (IOException | RuntimeException e) {
+            // Segment was dropped or damaged under us
+            index.remove(key.id(), location);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    // Written in the background, the render thread never waits on disk
+    public void put(RenderKey key, RenderArtifact image) {
+        if (!isEnabled() || index.containsKey(key.id())) {
+            return;
+        }
+        byte[] data = image.toByteArray();
+        submit(() -> {
+            synchronized (writeLock) {
+                if (!index.containsKey(key.id())) {
+                    append(key.id(), data);
+                    enforceSizeCap();
+                }
+            }
+        });
+    }
+
+    public void clear() {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (writeLock) {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment != active) {
+                    deleteSegment(segment);
+                }
+            }
+            try {
+                Segment old = active;
+                active = createSegment(old.id + 1);
+                deleteSegment(old);
+            } catch (IOException e) {
+                logger.error("Could not start a new render store segment", e);
+            }
+            index.clear();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${plantuml.render.store.compaction-interval:PT1M}",
+            initialDelayString = "${plantuml.render.store.compaction-interval:PT1M}")
+    public void scheduleCompaction() {
+        if (isEnabled()) {
+            submit(this::compact);
+        }
+    }
+
+    // Rewrites mostly dead segments and drops the least recently used ones over the size cap
+    void compact() {
+        synchronized (writeLock) {
+            List<Segment> sealed = segments.values().stream()
+                    .filter(segment -> segment != active)
+                    .sorted(Comparator.comparingInt(segment -> segment.id))
+                    .toList();
+            for (Segment segment : sealed) {
+                if (segment.size > 0 && (double) segment.liveBytes / segment.size < COMPACT_LIVE_RATIO) {
+                    rewrite(segment);
+                }
+            }
+            enforceSizeCap();
+        }
+    }
+
+    public long getEntryCount() {
+        return index.size();
+    }
+
+    public long getSizeBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictedSegments() {
+        return evictedSegments.get();
+    }
+
+    // Waits until queued writes and promotions are on disk
+    void drain() throws Exception {
+        maintenance.submit(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            closeAll();
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            maintenance.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Render store maintenance failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    // Copies a hot entry into the active segment, its old copy becomes dead space
+    private void promote(String id, Location from, byte[] data) {
+        synchronized (writeLock) {
+            if (!from.equals(index.get(id))) {
+                return;
+            }
+            append(id, data);
+        }
+    }
+
+    private void rewrite(Segment segment) {
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segmentId() != segment.id) {
+                continue;
+            }
+            try {
+                byte[] data = read(segment, location);
+                if (data == null) {
+                    index.remove(entry.getKey(), location);
+                } else {
+                    append(entry.getKey(), data);
+                }
+            } catch (IOException | RuntimeException e) {
+                index.remove(entry.getKey(), location);
+            }
+        }
+        deleteSegment(segment);
+    }
+
+    private void enforceSizeCap() {
+        while (getSizeBytes() > maxBytes) {
+            Segment coldest = segments.values().stream()
+                    .filter(segment -> segment != active)
+                    .min(Comparator.comparingLong((Segment segment) -> segment.lastAccess)
+                            .thenComparingInt(segment -> segment.id))
+                    .orElse(null);
+            if (coldest == null) {
+                return;
+            }
+            deleteSegment(coldest);
+            evictedSegments.incrementAndGet();
+        }
+    }
+
+    // Caller holds writeLock
+    private void append(String id, byte[] data) {
+        try {
+            byte[] keyBytes = id.getBytes(StandardCharsets.UTF_8);
+            int recordLength = HEADER_FIXED_BYTES + keyBytes.length + data.length;
+            if (active.size + recordLength > segmentBytes && active.size > 0) {
+                active = createSegment(active.id + 1);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED_BYTES + keyBytes.length);
+            header.putInt(MAGIC)
+                    .putShort((short) keyBytes.length)
+                    .put(keyBytes)
+                    .putInt(data.length)
+                    .putInt((int) crc.getValue())
+                    .flip();
+
+            Segment segment = active;
+            long position = segment.size;
+            ByteBuffer[] record = {header, ByteBuffer.wrap(data)};
+            long written = 0;
+            while (written < recordLength) {
+                written += segment.channel.write(record);
+            }
+            segment.size = position + recordLength;
+            segment.liveBytes += recordLength;
+            segment.lastAccess = System.currentTimeMillis();
+
+            Location location = new Location(segment.id, (int) (position + header.capacity()), data.length,
+                    recordLength, (int) crc.getValue());
+            Location previous = index.put(id, location);
+            markDead(previous);
+        } catch (IOException e) {
+            logger.warn("Could not write to render store", e);
+        }
+    }
+
+    private void markDead(Location location) {
+        if (location == null) {
+            return;
+        }
+        Segment segment = segments.get(location.segmentId());
+        if (segment != null) {
+            segment.liveBytes -= location.recordLength();
+        }
+    }
+
+    // Copies one entry out of the mapped segment, null when the checksum does not match
+    private static byte[] read(Segment segment, Location location) throws IOException {
+        ByteBuffer view = segment.mapping((long) location.offset() + location.length())
+                .slice(location.offset(), location.length());
+        byte[] data = new byte[location.length()];
+        view.get(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue() == location.crc() ? data : null;
+    }
+
+    // Rebuilds the index from one segment, a torn record at the end is cut off
+    private void scan(Segment segment) throws IOException {
+        if (segment.size == 0) {
+            return;
+        }
+        MappedByteBuffer buffer = segment.mapping(segment.size);
+        int position = 0;
+        while (position + HEADER_FIXED_BYTES <= segment.size) {
+            buffer.position(position);
+            if (buffer.getInt() != MAGIC) {
+                break;
+            }
+            int keyLength = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < keyLength + 8) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            int dataOffset = buffer.position();
+            if (length < 0 || dataOffset + (long) length > segment.size) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(dataOffset, length));
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            String id = new String(keyBytes, StandardCharsets.UTF_8);
+            int recordLength = dataOffset + length - position;
+            markDead(index.put(id, new Location(segment.id, dataOffset, length, recordLength, expectedCrc)));
+            segment.liveBytes += recordLength;
+            position = dataOffset + length;
+        }
+
+        if (position < segment.size) {
+            logger.warn("Truncating damaged render store segment {} at {}", segment.path, position);
+            segment.channel.truncate(position);
+            segment.size = position;
+            segment.mapped = null;
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = openSegment(path);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new Segment(id, path, channel);
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.id);
+        index.entrySet().removeIf(entry -> entry.getValue().segmentId() == segment.id);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.warn("Could not delete render store segment {}", segment.path, e);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return paths;
+    }
+
+    private void removeOtherVersions() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootDirectory, "v*")) {
+            for (Path old : stream) {
+                if (!old.equals(directory) && Files.isDirectory(old)) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(old, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                        for (Path file : files) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                    Files.deleteIfExists(old);
+                }
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                logger.debug("Could not close {}", segment.path, e);
+            }
+        }
+    }
+}
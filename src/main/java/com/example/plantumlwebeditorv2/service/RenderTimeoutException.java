@@ -0,0 +1,33 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import java.time.Duration;
+
+// Render (or the parse before it) did not finish before its deadline, mapped to 504 Gateway Timeout
+public class RenderTimeoutException extends RuntimeException {
+
+    private final OutputFormat format;
+    private final Duration timeout;
+
+    public RenderTimeoutException(OutputFormat format, Duration timeout) {
+        super("Diagram took longer than " + timeout.toMillis() + " ms to render");
+        this.format = format;
+        this.timeout = timeout;
+    }
+
+    // Preprocessing and parsing, no output format involved yet
+    public RenderTimeoutException(Duration timeout) {
+        super("Diagram took longer than " + timeout.toMillis() + " ms to parse");
+        this.format = null;
+        this.timeout = timeout;
+    }
+
+    // Null for a parse timeout
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.plantumlwebeditorv2.service;
+
+import net.sourceforge.plantuml.FileFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Entry point of a render worker JVM, started by RenderWorkerPool. No Spring, just PlantUML
+ * stdin carries LayoutRequests, stdout the answers, one at a time. Everything else printed goes to stderr
+ * so PlantUML or a library writing to System.out can't corrupt the pipe
+ */
+public final class RenderWorkerMain {
+
+    // Written once warm, the pool waits for it before handing out the worker
+    static final int READY = 0x504C5557;
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private static final List<String> WARMUP = List.of(
+            "@startuml\nAlice -> Bob: warm-up\nBob --> Alice\n@enduml",
+            "@startuml\nclass Order\nclass Customer\nCustomer --> Order\n@enduml");
+
+    private RenderWorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+
+        warmUp();
+        out.writeInt(READY);
+        out.flush();
+
+        while (true) {
+            LayoutRequest request;
+            try {
+                request = LayoutRequest.readFrom(in);
+            } catch (EOFException e) {
+                // The pool closed our stdin, recycled or shutting down
+                return;
+            }
+            ByteArrayOutputStream image = new ByteArrayOutputStream(16 * 1024);
+            try {
+                request.renderTo(image);
+            } catch (Exception e) {
+                String message = String.valueOf(e.getMessage());
+                out.writeByte(FAILED);
+                out.writeUTF(e.getClass().getSimpleName() + ": "
+                        + message.substring(0, Math.min(message.length(), MAX_ERROR_LENGTH)));
+                out.flush();
+                continue;
+            }
+            Runtime runtime = Runtime.getRuntime();
+            out.writeByte(OK);
+            out.writeInt(image.size());
+            image.writeTo(out);
+            out.writeLong(runtime.totalMemory() - runtime.freeMemory());
+            out.writeLong(runtime.maxMemory());
+            out.flush();
+        }
+    }
+
+    // Loads and JITs the PlantUML classes before the first real render, same idea as EngineWarmUp
+    private static void warmUp() {
+        for (String source : WARMUP) {
+            for (FileFormat format : List.of(FileFormat.SVG, FileFormat.PNG)) {
+                try {
+                    new LayoutRequest(source, format, 0, List.of("!pragma layout smetana"))
+                            .renderTo(new ByteArrayOutputStream());
+                } catch (Exception e) {
+                    System.err.println("Render worker warm-up failed: " + e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Optional pool of child JVMs that do the PlantUML layouts, so a runaway layout or a huge raster can only
+ * take down its own worker and never stalls GC for logins and saves in the API JVM
+ * Workers talk LayoutRequests over their stdin/stdout (see RenderWorkerMain), one render at a time each.
+ * A worker is recycled after max-renders or once its heap stays above recycle-heap-ratio, killed together with
+ * its dot when the render is cancelled, and replaced when it crashes. The crashed render is retried once on another
+ * worker. With no worker running at all PlantUmlService renders in-process as before
+ */
+@Service
+public class RenderWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderWorkerPool.class);
+
+    // How often a waiting render rechecks that some worker is still alive
+    private static final long BORROW_POLL_MS = 100;
+    private static final Duration RESTART_DELAY = Duration.ofSeconds(5);
+
+    private final boolean enabled;
+    private final int size;
+    private final DataSize heap;
+    private final int maxRenders;
+    private final double recycleHeapRatio;
+    private final Duration startTimeout;
+    private final GraphvizProbe graphvizProbe;
+    private final MeterRegistry meterRegistry;
+
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final Set<Worker> live = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger starting = new AtomicInteger();
+    // Pipe exchanges and worker start-ups, so the render thread itself only ever waits interruptibly
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean shuttingDown;
+
+    public RenderWorkerPool(@Value("${plantuml.render.workers.enabled:false}") boolean enabled,
+                            @Value("${plantuml.render.workers.count:0}") int count,
+                            @Value("${plantuml.render.workers.heap:256MB}") DataSize heap,
+                            @Value("${plantuml.render.workers.max-renders:500}") int maxRenders,
+                            @Value("${plantuml.render.workers.recycle-heap-ratio:0.8}") double recycleHeapRatio,
+                            @Value("${plantuml.render.workers.start-timeout:PT30S}") Duration startTimeout,
+                            @Value("${plantuml.render.executor.concurrency:0}") int renderConcurrency,
+                            GraphvizProbe graphvizProbe,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.heap = heap;
+        this.maxRenders = Math.max(1, maxRenders);
+        this.recycleHeapRatio = recycleHeapRatio;
+        this.startTimeout = startTimeout;
+        this.graphvizProbe = graphvizProbe;
+        this.meterRegistry = meterRegistry;
+        this.size = count > 0 ? count : autoSize(renderConcurrency, heap);
+
+        Gauge.builder("plantuml.render.workers.live", live, Set::size)
+                .description("Render worker JVMs running")
+                .register(meterRegistry);
+        Gauge.builder("plantuml.render.workers.idle", idle, BlockingQueue::size)
+                .description("Render workers waiting for a render")
+                .register(meterRegistry);
+    }
+
+    /*
+     * One worker per render thread, more could never be busy at once,
+     * but no more than half the machine's memory in worker heaps
+     */
+    private static int autoSize(int renderConcurrency, DataSize heap) {
+        int threads = renderConcurrency > 0 ? renderConcurrency : Runtime.getRuntime().availableProcessors();
+        long memory = ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+                ? os.getTotalMemorySize() : Runtime.getRuntime().maxMemory();
+        long byMemory = memory / 2 / Math.max(1, heap.toBytes());
+        return (int) Math.max(1, Math.min(threads, byMemory));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        logger.info("Starting {} render worker(s) with {} MB heap each", size, heap.toMegabytes());
+        for (int i = 0; i < size; i++) {
+            startWorker();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getLiveCount() {
+        return live.size();
+    }
+
+    /*
+     * Layout in a worker, null when no worker is running at all and the caller should render in-process
+     * Interrupting the calling thread kills the worker doing the layout
+     */
+    RenderArtifact.Buffer render(LayoutRequest request) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Worker worker = borrow();
+            if (worker == null) {
+                meterRegistry.counter("plantuml.render.workers.fallback").increment();
+                return null;
+            }
+            Future<Answer> exchange = io.submit(() -> worker.exchange(request));
+            Answer answer;
+            try {
+                answer = exchange.get();
+            } catch (InterruptedException e) {
+                // Cancelled or timed out, a layout that may never finish goes down with its worker
+                retire(worker, "killed");
+                Thread.currentThread().interrupt();
+                throw new IOException("Render interrupted", e);
+            } catch (ExecutionException e) {
+                // Pipe broken: the worker ran out of memory, was killed by the OS or crashed in native code
+                retire(worker, "crashed");
+                if (attempt > 0) {
+                    throw new IOException("Render workers crashed twice on this diagram", e.getCause());
+                }
+                logger.warn("Render worker crashed, retrying on another one: {}", e.getCause().toString());
+                continue;
+            }
+            release(worker);
+            if (answer.error() != null) {
+                throw new IOException(answer.error());
+            }
+            return answer.image();
+        }
+    }
+
+    private Worker borrow() throws IOException {
+        try {
+            while (true) {
+                if (live.isEmpty() && starting.get() == 0) {
+                    return null;
+                }
+                Worker worker = idle.poll(BORROW_POLL_MS, TimeUnit.MILLISECONDS);
+                if (worker != null) {
+                    if (worker.process.isAlive()) {
+                        return worker;
+                    }
+                    retire(worker, "crashed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Render interrupted", e);
+        }
+    }
+
+    // Back to the idle queue, unless the worker is due for a fresh JVM
+    private void release(Worker worker) {
+        if (worker.renders >= maxRenders) {
+            retire(worker, "renders");
+        } else if (worker.heapMax > 0 && worker.heapUsed > worker.heapMax * recycleHeapRatio) {
+            retire(worker, "heap");
+        } else {
+            idle.offer(worker);
+        }
+    }
+
+    // Stops the worker and starts its replacement
+    private void retire(Worker worker, String reason) {
+        if (!live.remove(worker)) {
+            return;
+        }
+        meterRegistry.counter("plantuml.render.workers.retired", "reason", reason).increment();
+        logger.debug("Render worker {} retired: {}", worker.process.pid(), reason);
+        worker.stop();
+        if (!shuttingDown) {
+            startWorker();
+        }
+    }
+
+    private void startWorker() {
+        starting.incrementAndGet();
+        io.submit(() -> {
+            try {
+                Worker worker = launch();
+                live.add(worker);
+                idle.offer(worker);
+                if (shuttingDown && live.remove(worker)) {
+                    // Came up while the pool was shutting down, nobody would ever stop it
+                    worker.stop();
+                }
+            } catch (Exception e) {
+                if (shuttingDown) {
+                    return;
+                }
+                meterRegistry.counter("plantuml.render.workers.start.failed").increment();
+                logger.warn("Render worker failed to start, retrying in {}s: {}", RESTART_DELAY.toSeconds(), e.toString());
+                io.submit(() -> {
+                    Thread.sleep(RESTART_DELAY.toMillis());
+                    if (!shuttingDown) {
+                        startWorker();
+                    }
+                    return null;
+                });
+            } finally {
+                starting.decrementAndGet();
+            }
+        });
+    }
+
+    // Starts the JVM and waits until it has warmed up
+    private Worker launch() throws IOException, InterruptedException, ExecutionException {
+        ProcessBuilder builder = new ProcessBuilder(command()).redirectError(ProcessBuilder.Redirect.INHERIT);
+        String dot = graphvizProbe.getStatus().path();
+        if (dot != null) {
+            builder.environment().put("GRAPHVIZ_DOT", dot);
+        }
+        Worker worker = new Worker(builder.start());
+        Future<Integer> ready = io.submit(() -> worker.fromWorker.readInt());
+        boolean started = false;
+        try {
+            if (ready.get(startTimeout.toMillis(), TimeUnit.MILLISECONDS) != RenderWorkerMain.READY) {
+                throw new IOException("Render worker answered with an unknown handshake");
+            }
+            started = true;
+            return worker;
+        } catch (TimeoutException e) {
+            throw new IOException("Render worker not ready within " + startTimeout);
+        } finally {
+            if (!started) {
+                worker.stop();
+            }
+        }
+    }
+
+    private List<String> command() {
+        String classPath = System.getProperty("java.class.path");
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + heap.toMegabytes() + "m",
+                // A worker out of memory is useless, exit so the pool sees a crash and replaces it
+                "-XX:+ExitOnOutOfMemoryError",
+                "-Djava.awt.headless=true",
+                "-cp", classPath));
+        if (classPath.endsWith(".jar") && !classPath.contains(File.pathSeparator)) {
+            // Spring Boot fat jar, the classes sit under BOOT-INF where only the Boot launcher finds them
+            command.add("-Dloader.main=" + RenderWorkerMain.class.getName());
+            command.add("org.springframework.boot.loader.launch.PropertiesLauncher");
+        } else {
+            command.add(RenderWorkerMain.class.getName());
+        }
+        return command;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        for (Worker worker : live) {
+            worker.stop();
+        }
+        live.clear();
+        idle.clear();
+        io.shutdownNow();
+    }
+
+    private record Answer(RenderArtifact.Buffer image, String error) {
+    }
+
+    // One child JVM, used by one render at a time
+    private static final class Worker {
+        final Process process;
+        final DataOutputStream toWorker;
+        final DataInputStream fromWorker;
+        int renders;
+        long heapUsed;
+        long heapMax;
+
+        Worker(Process process) {
+            this.process = process;
+            this.toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        Answer exchange(LayoutRequest request) throws IOException {
+            renders++;
+            request.writeTo(toWorker);
+            toWorker.flush();
+            if (fromWorker.readByte() != RenderWorkerMain.OK) {
+                return new Answer(null, fromWorker.readUTF());
+            }
+            int length = fromWorker.readInt();
+            RenderArtifact.Buffer image = new RenderArtifact.Buffer(length);
+            byte[] chunk = new byte[Math.min(length, 64 * 1024)];
+            for (int remaining = length; remaining > 0; ) {
+                int read = fromWorker.read(chunk, 0, Math.min(chunk.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Render worker closed the pipe mid-image");
+                }
+                image.write(chunk, 0, read);
+                remaining -= read;
+            }
+            heapUsed = fromWorker.readLong();
+            heapMax = fromWorker.readLong();
+            return new Answer(image, null);
+        }
+
+        // An idle worker exits on its own once stdin closes, the kill is for one stuck in a layout, dot included
+        void stop() {
+            try {
+                toWorker.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+}
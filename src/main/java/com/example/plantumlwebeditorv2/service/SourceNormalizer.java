@@ -0,0 +1,130 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/*
+ * Canonical form of a source for the render cache key, so cosmetic edits hit the same entry
+ * - line endings, indentation and trailing whitespace are dropped
+ * - ' comment lines are blanked, not removed, so line numbers in error images stay the same
+ * - trailing blank lines are dropped
+ * Only applied to @startuml sources made of single-line statements, anything with a multi-line
+ * construct (notes, legends, braces, styles, block comments, preprocessor code...) only gets
+ * line endings and trailing whitespace normalized, where indentation or a quote may be content
+ * Sources whose output embeds the source text only get unifyLineEndings, PlantUML reads them line by line
+ * and embeds the same text for either line ending
+ */
+final class SourceNormalizer {
+
+    // Closing lines of multi-line blocks whose body is text
+    private static final List<String> BLOCK_ENDS = List.of(
+            "end note", "endnote", "end rnote", "endrnote", "end hnote", "endhnote", "end ref",
+            "end legend", "endlegend", "end title", "endtitle", "end header", "endheader",
+            "end footer", "endfooter", "end caption", "endcaption"
+    );
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String ACTIVITY_LABEL_END = ";|<>/]}";
+
+    // Preprocessor lines that don't open a body
+    private static final List<String> SIMPLE_DIRECTIVES = List.of("!theme", "!pragma", "!include");
+
+    private SourceNormalizer() {
+    }
+
+    static String normalize(String source) {
+        String unified = source.replace("\r\n", "\n").replace('\r', '\n');
+        String[] lines = unified.split("\n", -1);
+        return isCanonicalizable(lines) ? canonicalize(lines) : unified.stripTrailing();
+    }
+
+    // LF line endings and no trailing line breaks, nothing else touched
+    static String unifyLineEndings(String source) {
+        String unified = source.replace("\r\n", "\n").replace('\r', '\n');
+        int end = unified.length();
+        while (end > 0 && unified.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return unified.substring(0, end);
+    }
+
+    private static String canonicalize(String[] lines) {
+        StringBuilder result = new StringBuilder(lines.length * 24);
+        int pendingBlankLines = 0;
+        for (String line : lines) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("'")) {
+                pendingBlankLines++;
+                continue;
+            }
+            if (!result.isEmpty()) {
+                result.append('\n');
+            }
+            result.append("\n".repeat(pendingBlankLines)).append(trimmed);
+            pendingBlankLines = 0;
+        }
+        return result.toString();
+    }
+
+    private static boolean isCanonicalizable(String[] lines) {
+        boolean started = false;
+        for (String line : lines) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            String lower = trimmed.toLowerCase(Locale.ROOT);
+            if (!started) {
+                // Other diagram kinds (ditaa, json, yaml, mindmap...) treat indentation as content
+                if (!lower.startsWith("@startuml")) {
+                    return false;
+                }
+                started = true;
+                continue;
+            }
+            if (trimmed.startsWith("'")) {
+                continue;
+            }
+            if (lower.startsWith("@start") && !lower.startsWith("@startuml")) {
+                return false;
+            }
+            if (!isSingleLineStatement(trimmed, lower)) {
+                return false;
+            }
+        }
+        return started;
+    }
+
+    private static boolean isSingleLineStatement(String trimmed, String lower) {
+        if (lower.startsWith("end") && BLOCK_ENDS.contains(WHITESPACE.matcher(lower).replaceAll(" "))) {
+            return false;
+        }
+        if (trimmed.indexOf('{') >= 0 || trimmed.indexOf('}') >= 0
+                || lower.contains("<style") || trimmed.contains("/'") || trimmed.endsWith("\\")) {
+            return false;
+        }
+        if (trimmed.startsWith("!") && SIMPLE_DIRECTIVES.stream().noneMatch(lower::startsWith)) {
+            return false;
+        }
+        // Activity labels run until one of these closing characters
+        if (trimmed.startsWith(":") && ACTIVITY_LABEL_END.indexOf(trimmed.charAt(trimmed.length() - 1)) < 0) {
+            return false;
+        }
+        if (lower.equals("ditaa") || lower.startsWith("ditaa(")) {
+            return false;
+        }
+        // Component and use case names may wrap onto the next lines
+        return count(trimmed, '[') == count(trimmed, ']') && count(trimmed, '(') == count(trimmed, ')');
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
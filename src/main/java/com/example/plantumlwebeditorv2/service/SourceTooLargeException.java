@@ -0,0 +1,20 @@
+package com.example.plantumlwebeditorv2.service;
+
+// Thrown when a source passes the byte cap or max-size characters, mapped to 413 Payload Too Large
+public class SourceTooLargeException extends IllegalArgumentException {
+
+    private final int limit;
+
+    public SourceTooLargeException(int limitBytes) {
+        this(limitBytes, "bytes");
+    }
+
+    public SourceTooLargeException(int limit, String unit) {
+        super("Source code too large, the limit is " + limit + " " + unit);
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
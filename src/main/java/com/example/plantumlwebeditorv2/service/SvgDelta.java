@@ -0,0 +1,173 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copy/insert delta of a new SVG against one the client already holds
+ * The base is indexed in fixed blocks, the target is scanned with a rolling hash and every block hit
+ * is grown in both directions, whatever isn't covered by a copy is sent literally
+ * SVG markup repeats a lot, so of several equal blocks the one nearest the current alignment wins
+ * PlantUML writes its SVG on very few lines, so a line diff would resend nearly everything
+ * Works on chars rather than bytes so offsets match JavaScript string indices on the client
+ * Ops: [offset, length] copies from the base, a string is inserted as is
+ */
+public final class SvgDelta {
+
+    private static final int BLOCK = 32;
+    private static final int PRIME = 31;
+    // Candidates verified on each side of the expected offset, bounds the work on repetitive markup
+    private static final int NEAREST_CANDIDATES = 4;
+    // PRIME^(BLOCK-1), for removing the char that leaves the window
+    private static final int OUTGOING_FACTOR;
+
+    static {
+        int factor = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            factor *= PRIME;
+        }
+        OUTGOING_FACTOR = factor;
+    }
+
+    private SvgDelta() {
+    }
+
+    public static List<Object> encode(String base, String target) {
+        List<Object> ops = new ArrayList<>();
+        if (base.length() < BLOCK || target.length() < BLOCK) {
+            addInsert(ops, target, 0, target.length());
+            return ops;
+        }
+        Map<Integer, List<Integer>> blocks = index(base);
+
+        int literalStart = 0;
+        int lastCopyEnd = 0;
+        // A hit far from the current alignment is held back for one block, a near one may still come
+        int farPos = -1;
+        int farCandidate = -1;
+        int pos = 0;
+        int hash = hash(target, 0);
+        while (pos + BLOCK <= target.length() || farPos >= 0) {
+            int candidate = -1;
+            if (pos + BLOCK <= target.length()) {
+                int expected = lastCopyEnd + (pos - literalStart);
+                candidate = bestMatch(blocks.get(hash), base, target, pos, expected);
+                if (candidate >= 0 && Math.abs(candidate - expected) > BLOCK) {
+                    if (farPos < 0) {
+                        farPos = pos;
+                        farCandidate = candidate;
+                    }
+                    candidate = -1;
+                }
+            }
+            if (candidate < 0 && farPos >= 0 && (pos - farPos >= BLOCK || pos + BLOCK > target.length())) {
+                pos = farPos;
+                candidate = farCandidate;
+            }
+            if (candidate >= 0) {
+                farPos = -1;
+                int copyStart = candidate;
+                int targetStart = pos;
+                while (targetStart > literalStart && copyStart > 0
+                        && base.charAt(copyStart - 1) == target.charAt(targetStart - 1)) {
+                    copyStart--;
+                    targetStart--;
+                }
+                int copyEnd = candidate + BLOCK;
+                int targetEnd = pos + BLOCK;
+                while (targetEnd < target.length() && copyEnd < base.length()
+                        && base.charAt(copyEnd) == target.charAt(targetEnd)) {
+                    copyEnd++;
+                    targetEnd++;
+                }
+                addInsert(ops, target, literalStart, targetStart);
+                addCopy(ops, copyStart, copyEnd - copyStart);
+                lastCopyEnd = copyEnd;
+                literalStart = targetEnd;
+                pos = targetEnd;
+                if (pos + BLOCK <= target.length()) {
+                    hash = hash(target, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK < target.length()) {
+                hash = (hash - target.charAt(pos) * OUTGOING_FACTOR) * PRIME + target.charAt(pos + BLOCK);
+            }
+            pos++;
+        }
+        addInsert(ops, target, literalStart, target.length());
+        return ops;
+    }
+
+    // Rebuilds the target, the client does the same in JavaScript
+    public static String apply(String base, List<Object> ops) {
+        StringBuilder result = new StringBuilder(base.length());
+        for (Object op : ops) {
+            if (op instanceof String literal) {
+                result.append(literal);
+            } else {
+                int[] copy = (int[]) op;
+                result.append(base, copy[0], copy[0] + copy[1]);
+            }
+        }
+        return result.toString();
+    }
+
+    // Offsets of the block-aligned windows of the base by hash
+    private static Map<Integer, List<Integer>> index(String base) {
+        Map<Integer, List<Integer>> blocks = new HashMap<>(base.length() / BLOCK * 2);
+        for (int offset = 0; offset + BLOCK <= base.length(); offset += BLOCK) {
+            blocks.computeIfAbsent(hash(base, offset), hash -> new ArrayList<>(1)).add(offset);
+        }
+        return blocks;
+    }
+
+    // Verified candidate closest to where the base would continue, -1 when none matches
+    // Offsets are ascending, so the nearest ones are found by binary search
+    private static int bestMatch(List<Integer> candidates, String base, String target, int pos, int expected) {
+        if (candidates == null) {
+            return -1;
+        }
+        int insertion = Collections.binarySearch(candidates, expected);
+        if (insertion < 0) {
+            insertion = -insertion - 1;
+        }
+        int best = -1;
+        int from = Math.max(0, insertion - NEAREST_CANDIDATES);
+        int to = Math.min(candidates.size(), insertion + NEAREST_CANDIDATES);
+        for (int i = from; i < to; i++) {
+            int candidate = candidates.get(i);
+            if ((best < 0 || Math.abs(candidate - expected) < Math.abs(best - expected))
+                    && target.regionMatches(pos, base, candidate, BLOCK)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static int hash(String text, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK; i++) {
+            hash = hash * PRIME + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static void addInsert(List<Object> ops, String target, int start, int end) {
+        if (end > start) {
+            ops.add(target.substring(start, end));
+        }
+    }
+
+    // Adjacent copies are merged into one
+    private static void addCopy(List<Object> ops, int offset, int length) {
+        if (!ops.isEmpty() && ops.get(ops.size() - 1) instanceof int[] last && last[0] + last[1] == offset) {
+            last[1] += length;
+            return;
+        }
+        ops.add(new int[]{offset, length});
+    }
+}
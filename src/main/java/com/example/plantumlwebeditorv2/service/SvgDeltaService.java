@@ -0,0 +1,77 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.SvgDeltaDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/*
+ * Delta updates for clients that already hold an older SVG of the same diagram
+ * SVGs sent to delta-capable clients are kept by ETag for a while, a later request naming one of
+ * them as its base gets the difference instead of the whole image
+ * Entries are the rendered artifacts themselves, usually shared with the render cache
+ */
+@Service
+public class SvgDeltaService {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Cache<String, RenderArtifact> bases;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary savedBytes;
+
+    public SvgDeltaService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           @Value("${plantuml.render.delta.max-bytes:33554432}") long maxBytes,
+                           @Value("${plantuml.render.delta.expire-after-access:PT10M}") Duration expireAfterAccess) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.bases = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String etag, RenderArtifact svg) -> svg.capacity() + ENTRY_OVERHEAD_BYTES)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+        this.savedBytes = DistributionSummary.builder("plantuml.render.delta.saved.bytes")
+                .description("Bytes not sent per delta response, against the full response")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public void remember(String etag, RenderArtifact svg) {
+        bases.put(etag, svg);
+    }
+
+    /*
+     * Serialized delta from the base to the target, or null when the full response should be sent:
+     * the base is gone, or the delta would not be smaller than fullBytes (what the full response costs)
+     */
+    public byte[] delta(String baseEtag, RenderArtifact target, int fullBytes) throws JsonProcessingException {
+        RenderArtifact base = baseEtag == null ? null : bases.getIfPresent(baseEtag);
+        if (base == null) {
+            count("no-base");
+            return null;
+        }
+        String targetSvg = target.toString(StandardCharsets.UTF_8);
+        List<Object> ops = SvgDelta.encode(base.toString(StandardCharsets.UTF_8), targetSvg);
+        byte[] delta = objectMapper.writeValueAsBytes(new SvgDeltaDTO(baseEtag, targetSvg.length(), ops));
+        if (delta.length >= fullBytes) {
+            count("no-gain");
+            return null;
+        }
+        count("delta");
+        savedBytes.record(fullBytes - delta.length);
+        return delta;
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("plantuml.render.delta.responses", "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.plantumlwebeditorv2.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/*
+ * Size pass over PlantUML's SVG output, done in a single forward scan over the bytes
+ * - drops comments (the embedded <!--SRC=[...]--> source among them) and processing instructions other than <?xml
+ * - drops attributes that only restate the SVG default
+ * - collapses style attributes: repeated properties keep their last value, empty declarations go
+ * - rounds decimals in geometric attribute values to two places. Every other attribute (titles, links, labels)
+ *   and all text content is copied as written
+ * All markup characters are ASCII, so working on UTF-8 bytes is safe
+ */
+public final class SvgOptimizer {
+
+    // Attribute values equal to what the renderer assumes anyway
+    private static final Map<String, String> DEFAULT_ATTRIBUTES = Map.of(
+            "lengthAdjust", "spacing",
+            "zoomAndPan", "magnify",
+            "contentStyleType", "text/css"
+    );
+
+    // Attributes holding coordinates, lengths or opacities, the only ones whose numbers are rounded
+    private static final Set<String> GEOMETRY_ATTRIBUTES = Set.of(
+            "x", "y", "x1", "y1", "x2", "y2", "cx", "cy", "r", "rx", "ry", "dx", "dy",
+            "width", "height", "d", "points", "transform", "viewBox", "textLength", "font-size",
+            "stroke-width", "stroke-dasharray", "stroke-dashoffset", "opacity", "fill-opacity", "stroke-opacity"
+    );
+
+    private final byte[] in;
+    private final int length;
+    private final RenderArtifact.Buffer out;
+    private int pos;
+
+    private SvgOptimizer(byte[] in, int length) {
+        this.in = in;
+        this.length = length;
+        this.out = new RenderArtifact.Buffer(length);
+    }
+
+    public static RenderArtifact optimize(RenderArtifact svg) {
+        SvgOptimizer optimizer = new SvgOptimizer(svg.buffer(), svg.length());
+        optimizer.run();
+        return optimizer.out.toArtifact();
+    }
+
+    private void run() {
+        while (pos < length) {
+            if (in[pos] != '<') {
+                int end = indexOf("<", pos);
+                copy(pos, end);
+                pos = end;
+            } else if (startsWith("<!--")) {
+                pos = after("-->", pos + 4);
+            } else if (startsWith("<![CDATA[")) {
+                int end = after("]]>", pos);
+                copy(pos, end);
+                pos = end;
+            } else if (startsWith("<?")) {
+                int end = after("?>", pos);
+                if (startsWith("<?xml ")) {
+                    copy(pos, end);
+                }
+                pos = end;
+            } else if (startsWith("</") || startsWith("<!")) {
+                int end = after(">", pos);
+                copy(pos, end);
+                pos = end;
+            } else {
+                element();
+            }
+        }
+    }
+
+    // Start tag: name, then attribute by attribute
+    private void element() {
+        int nameEnd = pos + 1;
+        while (nameEnd < length && !isSpace(in[nameEnd]) && in[nameEnd] != '>' && in[nameEnd] != '/') {
+            nameEnd++;
+        }
+        copy(pos, nameEnd);
+        pos = nameEnd;
+
+        while (pos < length) {
+            while (pos < length && isSpace(in[pos])) {
+                pos++;
+            }
+            if (pos >= length) {
+                return;
+            }
+            if (in[pos] == '>' || in[pos] == '/') {
+                int end = after(">", pos);
+                copy(pos, end);
+                pos = end;
+                return;
+            }
+            attribute();
+        }
+    }
+
+    private void attribute() {
+        int nameStart = pos;
+        while (pos < length && in[pos] != '=' && !isSpace(in[pos]) && in[pos] != '>' && in[pos] != '/') {
+            pos++;
+        }
+        String name = new String(in, nameStart, pos - nameStart, StandardCharsets.US_ASCII);
+        if (pos >= length || in[pos] != '=' || pos + 1 >= length || (in[pos + 1] != '"' && in[pos + 1] != '\'')) {
+            // Valueless or unquoted attribute, keep it as written
+            out.write(' ');
+            copy(nameStart, pos);
+            return;
+        }
+        byte quote = in[pos + 1];
+        int valueStart = pos + 2;
+        int valueEnd = valueStart;
+        while (valueEnd < length && in[valueEnd] != quote) {
+            valueEnd++;
+        }
+        pos = Math.min(valueEnd + 1, length);
+
+        String defaultValue = DEFAULT_ATTRIBUTES.get(name);
+        if (defaultValue != null
+                && defaultValue.equals(new String(in, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8))) {
+            return;
+        }
+        out.write(' ');
+        copy(nameStart, valueStart);
+        if (name.equals("style")) {
+            byte[] style = collapseStyle(new String(in, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8))
+                    .getBytes(StandardCharsets.UTF_8);
+            numbers(style, 0, style.length);
+        } else if (GEOMETRY_ATTRIBUTES.contains(name)) {
+            numbers(in, valueStart, valueEnd);
+        } else {
+            copy(valueStart, valueEnd);
+        }
+        out.write(quote);
+    }
+
+    /*
+     * One declaration per property, later ones win as they would in CSS and keep the place of the first
+     * Values with quotes or parentheses may hold a semicolon of their own, those only lose trailing semicolons
+     */
+    private static String collapseStyle(String style) {
+        if (style.indexOf('"') >= 0 || style.indexOf('\'') >= 0 || style.indexOf('(') >= 0) {
+            int end = style.length();
+            while (end > 0 && style.charAt(end - 1) == ';') {
+                end--;
+            }
+            return style.substring(0, end);
+        }
+        Map<String, String> declarations = new LinkedHashMap<>();
+        for (String declaration : style.split(";")) {
+            int colon = declaration.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String property = declaration.substring(0, colon).trim();
+            String value = declaration.substring(colon + 1).trim();
+            if (!property.isEmpty() && !value.isEmpty()) {
+                declarations.put(property, value);
+            }
+        }
+        StringJoiner collapsed = new StringJoiner(";");
+        declarations.forEach((property, value) -> collapsed.add(property + ":" + value));
+        return collapsed.toString();
+    }
+
+    // Copies the value, rounding every decimal number and leaving colours like #E2E2F0 alone
+    private void numbers(byte[] src, int start, int end) {
+        int i = start;
+        while (i < end) {
+            byte b = src[i];
+            if (b == '#') {
+                int colourEnd = i + 1;
+                while (colourEnd < end && Character.isLetterOrDigit(src[colourEnd])) {
+                    colourEnd++;
+                }
+                out.write(src, i, colourEnd - i);
+                i = colourEnd;
+            } else if (isDigit(b) && (i == start || (!isDigit(src[i - 1]) && src[i - 1] != '.'))) {
+                int numberEnd = i;
+                while (numberEnd < end && isDigit(src[numberEnd])) {
+                    numberEnd++;
+                }
+                if (numberEnd + 1 < end && src[numberEnd] == '.' && isDigit(src[numberEnd + 1])) {
+                    numberEnd++;
+                    while (numberEnd < end && isDigit(src[numberEnd])) {
+                        numberEnd++;
+                    }
+                    writeRounded(src, i, numberEnd);
+                } else {
+                    out.write(src, i, numberEnd - i);
+                }
+                i = numberEnd;
+            } else {
+                out.write(b);
+                i++;
+            }
+        }
+    }
+
+    // Two decimal places, a hundredth of a pixel is below anything a screen or printer shows
+    private void writeRounded(byte[] src, int start, int end) {
+        double value = Double.parseDouble(new String(src, start, end - start, StandardCharsets.US_ASCII));
+        long scaled = Math.round(value * 100);
+        long whole = scaled / 100;
+        long fraction = scaled % 100;
+        writeAscii(Long.toString(whole));
+        if (fraction != 0) {
+            out.write('.');
+            out.write('0' + (int) (fraction / 10));
+            if (fraction % 10 != 0) {
+                out.write('0' + (int) (fraction % 10));
+            }
+        }
+    }
+
+    private void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private void copy(int start, int end) {
+        out.write(in, start, end - start);
+    }
+
+    private boolean startsWith(String token) {
+        if (pos + token.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (in[pos + i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Index of the token at or after from, or the end of input
+    private int indexOf(String token, int from) {
+        int saved = pos;
+        try {
+            for (pos = from; pos < length; pos++) {
+                if (startsWith(token)) {
+                    return pos;
+                }
+            }
+            return length;
+        } finally {
+            pos = saved;
+        }
+    }
+
+    private int after(String token, int from) {
+        int index = indexOf(token, from);
+        return Math.min(index + token.length(), length);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.SyntaxCheckDTOs.CheckResult;
+import com.example.plantumlwebeditorv2.dto.SyntaxCheckDTOs.Diagnostic;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import net.sourceforge.plantuml.BlockUml;
+import net.sourceforge.plantuml.ErrorUml;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.core.Diagram;
+import net.sourceforge.plantuml.error.PSystemError;
+import net.sourceforge.plantuml.error.PSystemErrorPreprocessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Preprocess and parse only: no layout, no dot process, no image encoding
+ * Cheap enough for the editor to call on every keystroke, but preprocessing can still loop or include,
+ * so it runs on the bounded ParseExecutor rather than the request thread
+ */
+@Service
+@RequiredArgsConstructor
+public class SyntaxCheckService {
+
+    private static final Pattern ASSUMED_TYPE = Pattern.compile("\\(Assumed diagram type: ([^)]+)\\)");
+
+    private final MeterRegistry meterRegistry;
+    private final ParseExecutor parseExecutor;
+
+    @Value("${plantuml.render.max-size}")
+    private int maxRenderSize;
+
+    public CheckResult check(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source code is null");
+        }
+        if (source.length() > maxRenderSize) {
+            throw new SourceTooLargeException(maxRenderSize, "characters");
+        }
+        return parseExecutor.parse(() -> parse(source));
+    }
+
+    private CheckResult parse(String source) {
+        long startedAt = System.nanoTime();
+
+        List<String> diagramTypes = new ArrayList<>();
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        List<BlockUml> blocks = new SourceStringReader(source).getBlocks();
+        for (int block = 0; block < blocks.size(); block++) {
+            Diagram diagram = blocks.get(block).getDiagram();
+            diagramTypes.add(PageIndex.diagramType(diagram));
+            if (diagram instanceof PSystemError error) {
+                String kind = error instanceof PSystemErrorPreprocessor ? "preprocessor" : "syntax";
+                for (ErrorUml errorUml : error.getErrorsUml()) {
+                    diagnostics.add(new Diagnostic(errorUml.getLineLocation().getPosition() + 1, block, kind,
+                            errorUml.getError(), assumedType(errorUml.getError())));
+                }
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startedAt;
+        meterRegistry.timer("plantuml.check").record(elapsedNanos, TimeUnit.NANOSECONDS);
+        return new CheckResult(diagnostics.isEmpty(), diagramTypes, diagnostics, elapsedNanos / 1000);
+    }
+
+    // "Syntax Error? (Assumed diagram type: sequence)" -> SEQUENCE
+    private static String assumedType(String message) {
+        Matcher matcher = ASSUMED_TYPE.matcher(message == null ? "" : message);
+        return matcher.find() ? matcher.group(1).trim().toUpperCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.model.DiagramThumbnail;
+import com.example.plantumlwebeditorv2.model.Project;
+import com.example.plantumlwebeditorv2.repository.DiagramThumbnailRepository;
+import com.example.plantumlwebeditorv2.repository.ProjectRepository;
+import com.example.plantumlwebeditorv2.service.PlantUmlService.OutputFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Thumbnails for project listings, made in the background after content changes
+ * Changes are debounced per project, a burst of autosaves ends in one thumbnail of the last version
+ * One thread does all of them, outside the render pool and the render cache: thumbnails never take an
+ * interactive render's slot, and only the scaled down image is kept
+ * Thumbnails are stored by content hash, unchanged or shared sources are never rendered twice
+ * Hashes no project has any more (edited or deleted) are pruned on a schedule, on the same thread
+ */
+@Service
+public class ThumbnailService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    // Project contents read per query, and thumbnails deleted per statement, while pruning
+    private static final int PRUNE_BATCH_SIZE = 500;
+
+    private final DiagramThumbnailRepository thumbnailRepository;
+    private final ProjectRepository projectRepository;
+    private final PlantUmlService plantUmlService;
+    private final Duration debounce;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final Timer generateTimer;
+    private final Counter debouncedCounter;
+    private final Counter prunedCounter;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "plantuml-thumbnails");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Long, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+
+    public ThumbnailService(DiagramThumbnailRepository thumbnailRepository, ProjectRepository projectRepository,
+                            PlantUmlService plantUmlService, MeterRegistry meterRegistry,
+                            @Value("${plantuml.thumbnail.debounce:PT5S}") Duration debounce,
+                            @Value("${plantuml.thumbnail.max-width:320}") int maxWidth,
+                            @Value("${plantuml.thumbnail.max-height:240}") int maxHeight) {
+        this.thumbnailRepository = thumbnailRepository;
+        this.projectRepository = projectRepository;
+        this.plantUmlService = plantUmlService;
+        this.debounce = debounce;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.generateTimer = Timer.builder("plantuml.thumbnail.generate")
+                .description("Render and downscale of one thumbnail")
+                .register(meterRegistry);
+        this.debouncedCounter = Counter.builder("plantuml.thumbnail.debounced")
+                .description("Thumbnail requests replaced by a newer change of the same project")
+                .register(meterRegistry);
+        this.prunedCounter = Counter.builder("plantuml.thumbnail.pruned")
+                .description("Thumbnails deleted because no project has their content any more")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onContentChanged(ProjectContentChangedEvent event) {
+        schedule(event.projectId());
+    }
+
+    // (Re)starts the project's debounce window, the content is read when it ends
+    public void schedule(Long projectId) {
+        pending.compute(projectId, (id, previous) -> {
+            if (previous != null && previous.cancel(false)) {
+                debouncedCounter.increment();
+            }
+            return delayedGenerate(id);
+        });
+    }
+
+    // Backfill for projects without a thumbnail, leaves a running debounce window alone
+    public void scheduleIfIdle(Long projectId) {
+        pending.computeIfAbsent(projectId, this::delayedGenerate);
+    }
+
+    /*
+     * Only ever called inside a map compute, the task's own check waits for that compute to finish
+     * It removes its own entry only, a newer future installed meanwhile must stay cancellable
+     */
+    private ScheduledFuture<?> delayedGenerate(Long projectId) {
+        AtomicReference<ScheduledFuture<?>> self = new AtomicReference<>();
+        self.set(scheduler.schedule(() -> {
+            pending.computeIfPresent(projectId, (id, current) -> current == self.get() ? null : current);
+            generate(projectId);
+        }, debounce.toMillis(), TimeUnit.MILLISECONDS));
+        return self.get();
+    }
+
+    void generate(Long projectId) {
+        Optional<Project> project = projectRepository.findById(projectId);
+        if (project.isEmpty() || project.get().getContent() == null || project.get().getContent().isBlank()) {
+            return;
+        }
+        String content = project.get().getContent();
+        String hash = ProjectRenderService.contentHash(content);
+        if (thumbnailRepository.existsById(hash)) {
+            return;
+        }
+        try {
+            DiagramThumbnail thumbnail = generateTimer.recordCallable(() -> render(hash, content));
+            thumbnailRepository.save(thumbnail);
+        } catch (Exception e) {
+            logger.warn("Could not create thumbnail of project {}: {}", projectId, e.getMessage());
+        }
+    }
+
+    // First page as PNG, scaled down to fit the box, never scaled up
+    private DiagramThumbnail render(String hash, String content) throws IOException {
+        RenderArtifact png = plantUmlService.renderUncached(content, OutputFormat.PNG, RenderOptions.DEFAULT);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        if (image == null) {
+            throw new IOException("Rendered PNG could not be read");
+        }
+        BufferedImage scaled = scale(image);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "png", out);
+        return new DiagramThumbnail(hash, out.toByteArray(), scaled.getWidth(), scaled.getHeight(), LocalDateTime.now());
+    }
+
+    // Halving steps keep thin diagram lines visible, a single bilinear step would drop most of them
+    private BufferedImage scale(BufferedImage image) {
+        double factor = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * factor));
+
+        BufferedImage current = image;
+        while (current.getWidth() != targetWidth || current.getHeight() != targetHeight) {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, width, height, null);
+            graphics.dispose();
+            current = next;
+        }
+        return current;
+    }
+
+    // Queued behind pending thumbnails, so none is created while the referenced hashes are collected
+    @Scheduled(fixedDelayString = "${plantuml.thumbnail.prune-interval:PT1H}",
+            initialDelayString = "${plantuml.thumbnail.prune-interval:PT1H}")
+    public void schedulePrune() {
+        scheduler.execute(() -> {
+            try {
+                prune();
+            } catch (RuntimeException e) {
+                logger.warn("Could not prune thumbnails: {}", e.getMessage());
+            }
+        });
+    }
+
+    // Deletes the thumbnails of hashes no project content has, returns how many
+    int prune() {
+        Set<String> referenced = new HashSet<>();
+        Pageable page = PageRequest.of(0, PRUNE_BATCH_SIZE);
+        Slice<String> contents;
+        do {
+            contents = projectRepository.findContents(page);
+            for (String content : contents) {
+                if (!content.isBlank()) {
+                    referenced.add(ProjectRenderService.contentHash(content));
+                }
+            }
+            page = contents.nextPageable();
+        } while (contents.hasNext());
+
+        List<String> orphans = thumbnailRepository.findAllHashes().stream()
+                .filter(hash -> !referenced.contains(hash))
+                .toList();
+        for (int from = 0; from < orphans.size(); from += PRUNE_BATCH_SIZE) {
+            thumbnailRepository.deleteAllByIdInBatch(orphans.subList(from, Math.min(orphans.size(), from + PRUNE_BATCH_SIZE)));
+        }
+        prunedCounter.increment(orphans.size());
+        if (!orphans.isEmpty()) {
+            logger.info("Pruned {} thumbnail(s) no project uses any more", orphans.size());
+        }
+        return orphans.size();
+    }
+
+    public Optional<DiagramThumbnail> find(String hash) {
+        return thumbnailRepository.findById(hash);
+    }
+
+    public Set<String> existing(Collection<String> hashes) {
+        return hashes.isEmpty() ? Set.of() : thumbnailRepository.findExistingHashes(hashes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
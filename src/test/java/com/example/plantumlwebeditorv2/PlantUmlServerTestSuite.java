@@ -13,11 +13,26 @@ import org.junit.platform.suite.api.Suite;
         AuthControllerTest.class,
         ProjectControllerTest.class,
         PlantUmlControllerTest.class,
+        LivePreviewHandlerTest.class,
 
         // Service Tests
         UserServiceTest.class,
         ProjectServiceTest.class,
         PlantUmlServiceTest.class,
+        RenderExecutorTest.class,
+        ParseExecutorTest.class,
+        BatchRenderServiceTest.class,
+        RenderMemoryBudgetTest.class,
+        RenderWorkerPoolTest.class,
+        RenderCoalescerTest.class,
+        DotProcessReaperTest.class,
+        RenderStoreTest.class,
+        PlantUmlTextDecoderTest.class,
+        SvgOptimizerTest.class,
+        SvgDeltaTest.class,
+        ThumbnailServiceTest.class,
+        EngineWarmUpTest.class,
+        SourceNormalizerTest.class,
 
         // Integration Tests
         PlantUmlServerIntegrationTest.class
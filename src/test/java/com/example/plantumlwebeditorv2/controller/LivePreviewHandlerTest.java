@@ -0,0 +1,100 @@
+package com.example.plantumlwebeditorv2.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class LivePreviewHandlerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final BlockingQueue<JsonNode> received = new LinkedBlockingQueue<>();
+    private WebSocketSession session;
+
+    @BeforeEach
+    void connect() throws Exception {
+        session = new StandardWebSocketClient().execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+                received.add(objectMapper.readTree(message.getPayload()));
+            }
+        }, "ws://localhost:" + port + "/ws/preview").get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        session.close();
+    }
+
+    @Test
+    void preview_RendersSvg() throws Exception {
+        send(1, "@startuml\nAlice -> Bob: Hello\n@enduml");
+
+        JsonNode result = received.poll(30, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(1, result.get("version").asLong());
+        assertEquals(200, result.get("status").asInt());
+        assertEquals("image/svg+xml", result.get("contentType").asText());
+        assertTrue(result.get("data").asText().contains("<svg"));
+    }
+
+    @Test
+    void preview_LatestVersionWins() throws Exception {
+        for (int version = 1; version <= 5; version++) {
+            send(version, "@startuml\nclass Version" + version + "\n@enduml");
+        }
+
+        // Older versions may or may not make it out, but never after a newer one and the newest always does
+        long lastVersion = 0;
+        while (lastVersion < 5) {
+            JsonNode result = received.poll(30, TimeUnit.SECONDS);
+            assertNotNull(result, "newest version was never pushed");
+            assertTrue(result.get("version").asLong() > lastVersion);
+            lastVersion = result.get("version").asLong();
+            assertEquals(200, result.get("status").asInt());
+        }
+        assertTrue(received.poll(500, TimeUnit.MILLISECONDS) == null);
+    }
+
+    @Test
+    void preview_InvalidRequest_ReportsStatus() throws Exception {
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                Map.of("version", 3, "source", "@startuml\nAlice -> Bob\n@enduml", "page", 7))));
+        JsonNode result = received.poll(30, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(3, result.get("version").asLong());
+        assertEquals(400, result.get("status").asInt());
+
+        session.sendMessage(new TextMessage("not json"));
+        result = received.poll(30, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(400, result.get("status").asInt());
+    }
+
+    private void send(long version, String source) throws Exception {
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                Map.of("version", version, "source", source, "format", "SVG"))));
+    }
+}
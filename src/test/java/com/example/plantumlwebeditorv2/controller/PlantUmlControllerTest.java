@@ -1,12 +1,37 @@
 package com.example.plantumlwebeditorv2.controller;
 
+import com.example.plantumlwebeditorv2.service.BatchRenderService;
+import com.example.plantumlwebeditorv2.service.GraphvizProbe;
+import com.example.plantumlwebeditorv2.service.PlantUmlService;
+import com.example.plantumlwebeditorv2.service.RenderArtifact;
+import com.example.plantumlwebeditorv2.service.SvgDeltaService;
+import com.example.plantumlwebeditorv2.service.SyntaxCheckService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.plantuml.code.TranscoderUtil;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -19,7 +44,14 @@ public class PlantUmlControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GraphvizProbe graphvizProbe;
+
     private static final String VALID_PLANTUML = "@startuml\nAlice -> Bob: Hello\nBob --> Alice: Hi\n@enduml";
+    private static final String MULTI_PAGE_PLANTUML = "@startuml\nAlice -> Bob\nnewpage\nBob -> Carol\n@enduml";
 
     @Test
     void renderDiagram_SVG_Success() throws Exception {
@@ -69,6 +101,47 @@ public class PlantUmlControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void renderDiagram_BodyOverByteCap_PayloadTooLarge() throws Exception {
+        // Test max-size is 4096 characters, so at most 12288 UTF-8 bytes
+        mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(new byte[12289]))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.message").value(containsString("12288")));
+
+        mockMvc.perform(post("/api/plantuml/check")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(new byte[20000]))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void renderDiagram_BodyOverCharacterLimit_PayloadTooLarge() throws Exception {
+        // Within the 12288 byte cap but over the 4096 character max-size
+        byte[] body = ("@startuml\n" + "A -> B\n".repeat(600) + "@enduml").getBytes(StandardCharsets.UTF_8);
+        mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(body))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.message").value(containsString("4096 characters")));
+
+        mockMvc.perform(post("/api/plantuml/check")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(body))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void renderDiagram_Utf8Body_Decoded() throws Exception {
+        mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(new MediaType("text", "plain", StandardCharsets.UTF_8))
+                        .content("@startuml\nAlice -> Bob: Grüße ✓\n@enduml".getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isOk())
+                // PlantUML writes non-ASCII text as character references
+                .andExpect(content().string(containsString("Gr&#252;&#223;e &#10003;")));
+    }
+
     @Test
     void renderDiagram_InvalidPlantUML_Success() throws Exception {
         // PlantUML typically still renders even with syntax errors
@@ -97,4 +170,403 @@ public class PlantUmlControllerTest {
                 .andExpect(content().contentType("image/svg+xml"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void renderDiagram_IfNoneMatch_NotModified() throws Exception {
+        String etag = mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(post("/api/plantuml/render")
+                        .header("If-None-Match", etag)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+
+        // Same tag for another source must render again
+        mockMvc.perform(post("/api/plantuml/render")
+                        .header("If-None-Match", etag)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("@startuml\nAlice -> Carol: Hello\n@enduml"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void renderDiagram_RenderFails_NoValidators() throws Exception {
+        // Page out of range only shows up in the render, after the tag was computed
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("page", "7")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().string("Cache-Control", containsString("no-store")));
+    }
+
+    @Test
+    void generateImage_EtagDiffersPerFormat() throws Exception {
+        String svgEtag = mockMvc.perform(post("/api/plantuml/image")
+                        .param("format", "SVG")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(post("/api/plantuml/image")
+                        .param("format", "PNG")
+                        .header("If-None-Match", svgEtag)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG));
+    }
+
+    @Test
+    void encodedSvg_Get_Immutable() throws Exception {
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode(VALID_PLANTUML);
+
+        // Smetana never falls back, the default Graphviz layout does on machines without dot
+        String etag = mockMvc.perform(get("/api/plantuml/svg/" + encoded).param("layout", "smetana"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/svg+xml"))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/plantuml/svg/" + encoded).param("layout", "smetana").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void encodedSvg_GraphvizFallback_NotImmutable() throws Exception {
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode(VALID_PLANTUML);
+
+        mockMvc.perform(get("/api/plantuml/svg/" + encoded).param("layout", "graphviz"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", graphvizProbe.isAvailable()
+                        ? "max-age=31536000, public, immutable" : "no-cache"));
+    }
+
+    @Test
+    void encodedSvg_RenderFails_NoStore() throws Exception {
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode(VALID_PLANTUML);
+
+        mockMvc.perform(get("/api/plantuml/svg/" + encoded).param("page", "7"))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().string("Cache-Control", "no-store"));
+    }
+
+    @Test
+    void encodedPng_Get_Success() throws Exception {
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode(VALID_PLANTUML);
+
+        mockMvc.perform(get("/api/plantuml/png/" + encoded))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG));
+    }
+
+    @Test
+    void encodedSvg_Malformed_BadRequest() throws Exception {
+        mockMvc.perform(get("/api/plantuml/svg/~hzz"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void renderDiagram_AcceptGzip_Precompressed() throws Exception {
+        MockHttpServletResponse plain = mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn().getResponse();
+
+        MockHttpServletResponse gzip = mockMvc.perform(post("/api/plantuml/render")
+                        .header("Accept-Encoding", "br;q=1.0, gzip;q=0.8")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().stringValues("Vary", hasItem("Accept-Encoding")))
+                .andReturn().getResponse();
+
+        byte[] compressed = gzip.getContentAsByteArray();
+        assertTrue(compressed.length < plain.getContentAsByteArray().length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(plain.getContentAsByteArray(), in.readAllBytes());
+        }
+        assertNotEquals(plain.getHeader("ETag"), gzip.getHeader("ETag"));
+    }
+
+    @Test
+    void renderDiagram_NoGzipVariant_IdentityTag() throws Exception {
+        // An artifact that was never compressed goes out as is, and so must its tag
+        PlantUmlService plantUmlService = mock(PlantUmlService.class);
+        when(plantUmlService.maxSourceBytes()).thenReturn(12288);
+        when(plantUmlService.etag(any(), any(), any())).thenReturn("\"abc\"");
+        when(plantUmlService.render(any(), any(), any()))
+                .thenReturn(RenderArtifact.of("<svg/>".getBytes(StandardCharsets.UTF_8)));
+        MockMvc standalone = MockMvcBuilders.standaloneSetup(new PlantUmlController(plantUmlService,
+                mock(BatchRenderService.class), mock(SyntaxCheckService.class), mock(SvgDeltaService.class),
+                objectMapper, new SimpleMeterRegistry())).build();
+
+        standalone.perform(post("/api/plantuml/render")
+                        .header("Accept-Encoding", "gzip")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", "\"abc\""));
+
+        // Either tag is current before the render tells which variant there is
+        standalone.perform(post("/api/plantuml/render")
+                        .header("Accept-Encoding", "gzip")
+                        .header("If-None-Match", "\"abc\"")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"abc\""));
+    }
+
+    @Test
+    void generateImage_GzipRefused_Identity() throws Exception {
+        mockMvc.perform(post("/api/plantuml/image")
+                        .param("format", "SVG")
+                        .header("Accept-Encoding", "gzip;q=0")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void renderBatch_PerItemStatus() throws Exception {
+        String body = "{\"items\":["
+                + "{\"id\":\"seq\",\"source\":\"@startuml\\nA -> B\\n@enduml\",\"format\":\"SVG\"},"
+                + "{\"id\":\"png\",\"source\":\"@startuml\\nA -> B\\n@enduml\",\"format\":\"PNG\"},"
+                + "{\"id\":\"bad\",\"source\":\"@startuml\\nA -> B\\n@enduml\",\"format\":\"GIF\"}]}";
+
+        String ndjson = mockMvc.perform(post("/api/plantuml/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.trim().split("\n");
+        assertEquals(3, lines.length);
+        Map<String, Integer> statusById = new HashMap<>();
+        for (String line : lines) {
+            JsonNode result = objectMapper.readTree(line);
+            statusById.put(result.get("id").asText(), result.get("status").asInt());
+            if (result.get("status").asInt() == 200) {
+                assertTrue(result.get("data").asText().length() > 0);
+            }
+        }
+        assertEquals(Map.of("seq", 200, "png", 200, "bad", 400), statusById);
+    }
+
+    @Test
+    void listPages_MultiPage_Success() throws Exception {
+        mockMvc.perform(post("/api/plantuml/pages")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(MULTI_PAGE_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].index").value(1));
+
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("page", "1")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(MULTI_PAGE_PLANTUML))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("page", "2")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(MULTI_PAGE_PLANTUML))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void renderPages_Anonymous_AllPagesStreamed() throws Exception {
+        // Public like /pages, the anonymous editor lists pages and then renders them
+        String ndjson = mockMvc.perform(post("/api/plantuml/pages/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(MULTI_PAGE_PLANTUML))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.trim().split("\n");
+        assertEquals(2, lines.length);
+        for (String line : lines) {
+            assertEquals(200, objectMapper.readTree(line).get("status").asInt());
+        }
+    }
+
+    @Test
+    void checkSyntax_Valid() throws Exception {
+        mockMvc.perform(post("/api/plantuml/check")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(true))
+                .andExpect(jsonPath("$.diagramTypes[0]").value("SEQUENCE"))
+                .andExpect(jsonPath("$.diagnostics").isEmpty());
+    }
+
+    @Test
+    void checkSyntax_ErrorLine() throws Exception {
+        mockMvc.perform(post("/api/plantuml/check")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("@startuml\nAlice -> Bob: Hello\nthis is not valid\n@enduml"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(false))
+                .andExpect(jsonPath("$.diagramTypes[0]").value("ERROR"))
+                .andExpect(jsonPath("$.diagnostics[0].line").value(3))
+                .andExpect(jsonPath("$.diagnostics[0].kind").value("syntax"))
+                .andExpect(jsonPath("$.diagnostics[0].diagramType").value("SEQUENCE"));
+    }
+
+    @Test
+    void renderBatch_Anonymous_Unauthorized() throws Exception {
+        mockMvc.perform(post("/api/plantuml/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[{\"source\":\"@startuml\\nA -> B\\n@enduml\"}]}"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void renderCacheStats_Admin_Success() throws Exception {
+        mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/admin/render-cache"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries").isNumber())
+                .andExpect(jsonPath("$.maxWeightBytes").isNumber());
+
+        mockMvc.perform(delete("/api/admin/render-cache"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Render cache flushed"));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void renderCacheStats_User_Forbidden() throws Exception {
+        mockMvc.perform(get("/api/admin/render-cache"))
+                .andExpect(status().isForbidden());
+    }
+
+
+    @Test
+    void renderDiagram_DeltaAgainstHeldSvg() throws Exception {
+        StringBuilder base = new StringBuilder("@startuml\n");
+        for (int i = 0; i < 30; i++) {
+            base.append("Participant").append(i).append(" -> Participant").append(i + 1).append(": message ").append(i).append('\n');
+        }
+        String baseSource = base + "@enduml";
+        String editedSource = base + "Participant0 -> Participant1: one more\n@enduml";
+
+        MockHttpServletResponse first = mockMvc.perform(post("/api/plantuml/render")
+                        .header("A-IM", "svgdelta")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(baseSource))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        String baseSvg = first.getContentAsString();
+        String gzipTag = first.getHeader("ETag").replaceFirst("\"$", "-gzip\"");
+        mockMvc.perform(post("/api/plantuml/render")
+                        .header("A-IM", "svgdelta")
+                        .header("If-None-Match", gzipTag)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(editedSource))
+                .andExpect(status().is(226))
+                .andExpect(header().string("Delta-Base", gzipTag));
+
+        MockHttpServletResponse second = mockMvc.perform(post("/api/plantuml/render")
+                        .header("A-IM", "svgdelta")
+                        .header("If-None-Match", first.getHeader("ETag"))
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(editedSource))
+                .andExpect(status().is(226))
+                .andExpect(header().string("IM", "svgdelta"))
+                .andExpect(header().string("Delta-Base", first.getHeader("ETag")))
+                .andExpect(content().contentType("application/vnd.plantuml.svg-delta+json"))
+                .andReturn().getResponse();
+
+        String fullSvg = mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(editedSource))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode delta = objectMapper.readTree(second.getContentAsString());
+        StringBuilder rebuilt = new StringBuilder();
+        for (JsonNode op : delta.get("ops")) {
+            if (op.isTextual()) {
+                rebuilt.append(op.asText());
+            } else {
+                rebuilt.append(baseSvg, op.get(0).asInt(), op.get(0).asInt() + op.get(1).asInt());
+            }
+        }
+        assertEquals(fullSvg, rebuilt.toString());
+        assertEquals(fullSvg.length(), delta.get("length").asInt());
+        assertTrue(second.getContentLength() < fullSvg.length());
+    }
+
+    @Test
+    void renderDiagram_DeltaWithUnknownBase_SendsFullSvg() throws Exception {
+        mockMvc.perform(post("/api/plantuml/render")
+                        .header("A-IM", "svgdelta")
+                        .header("If-None-Match", "\"unknown-base\"")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/svg+xml"))
+                .andExpect(header().doesNotExist("IM"));
+    }
+
+    @Test
+    void renderDiagram_LayoutParameter() throws Exception {
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("layout", "smetana")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("@startuml\nclass Foo\nclass Bar\nFoo --> Bar\n@enduml"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(">Foo<")));
+
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("layout", "neato")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void renderDiagram_QualityParameter() throws Exception {
+        String full = mockMvc.perform(post("/api/plantuml/render")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(post("/api/plantuml/render")
+                        .param("quality", "draft")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Alice")))
+                .andExpect(header().string("ETag", not(full)));
+
+        mockMvc.perform(post("/api/plantuml/image")
+                        .param("quality", "rough")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(VALID_PLANTUML))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.dto.BatchRenderDTOs.Item;
+import com.example.plantumlwebeditorv2.dto.BatchRenderDTOs.ItemResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchRenderServiceTest {
+
+    private static final int CONCURRENCY = 2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private BatchRenderService batchRenderService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Renders block like real ones waiting on the render executor
+        PlantUmlService plantUmlService = mock(PlantUmlService.class);
+        when(plantUmlService.render(any(), any(), any())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return RenderArtifact.of(new byte[]{'<'});
+        });
+        batchRenderService = new BatchRenderService(plantUmlService, new SimpleMeterRegistry(), CONCURRENCY, 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchRenderService.shutdown();
+    }
+
+    @Test
+    void render_BlockingItems_NeverMoreThanConcurrencyInFlight() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new Item("item-" + i, "@startuml\nA -> B\n@enduml", "SVG", false, 0, null));
+        }
+        List<ItemResult> results = new ArrayList<>();
+
+        batchRenderService.render(items, results::add);
+
+        assertEquals(100, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == 200));
+        assertTrue(peak.get() <= CONCURRENCY, "peak in flight was " + peak.get());
+        assertEquals(CONCURRENCY, peak.get());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.plantumlwebeditorv2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class DotProcessReaperTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DotProcessReaper dotProcessReaper;
+    private ExecutorService renderThreads;
+    private Path fakeDot;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(Files.exists(Path.of("/proc/thread-self")), "needs Linux /proc");
+        dotProcessReaper = new DotProcessReaper(new GraphvizProbe());
+        // Anything called dot counts as Graphviz, a copy of sleep stands in for a long layout
+        fakeDot = Files.copy(Path.of("/bin/sleep"), tempDir.resolve("dot"));
+        renderThreads = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (renderThreads != null) {
+            renderThreads.shutdownNow();
+        }
+        ProcessHandle.current().children().forEach(ProcessHandle::destroyForcibly);
+    }
+
+    @Test
+    void kill_ConcurrentRenders_OnlyTheCancelledRendersDot() throws Exception {
+        Render cancelled = startRender();
+        Render neighbour = startRender();
+
+        assertEquals(1, dotProcessReaper.kill(cancelled.claim));
+
+        assertTrue(cancelled.dot.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(neighbour.dot.isAlive());
+        assertTrue(cancelled.claim.release(), "killed render must not be cached");
+        assertFalse(neighbour.claim.release());
+    }
+
+    @Test
+    void kill_AfterRelease_LeavesThreadAlone() throws Exception {
+        Render render = startRender();
+        render.claim.release();
+
+        assertEquals(0, dotProcessReaper.kill(render.claim));
+        assertTrue(render.dot.isAlive());
+    }
+
+    // Claims a render thread and starts dot from it, the way PlantUML's ProcessRunner does
+    private Render startRender() throws Exception {
+        return renderThreads.submit(() -> {
+            DotProcessReaper.Claim claim = dotProcessReaper.claim();
+            Process dot = new ProcessBuilder(fakeDot.toString(), "30").start();
+            return new Render(claim, dot);
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private record Render(DotProcessReaper.Claim claim, Process dot) {
+    }
+}
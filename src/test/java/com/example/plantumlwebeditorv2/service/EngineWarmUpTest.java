@@ -0,0 +1,57 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.config.WarmUpHealthIndicator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class EngineWarmUpTest {
+
+    @Autowired
+    private PlantUmlService plantUmlService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void run_RendersCorpusInBothFormats() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        EngineWarmUp warmUp = new EngineWarmUp(plantUmlService, registry, true, 2);
+        WarmUpHealthIndicator indicator = new WarmUpHealthIndicator(warmUp);
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+
+        warmUp.run();
+
+        // sequence, class, activity, component and state, SVG and PNG, twice
+        assertEquals(20, warmUp.getRenders());
+        assertEquals(0, warmUp.getFailures());
+        assertTrue(warmUp.isFinished());
+        assertEquals(1, registry.timer("plantuml.warmup.duration").count());
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    void readiness_UpWhenWarmUpDisabled() throws Exception {
+        mockMvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+        // Disabled, nothing was rendered or timed
+        assertEquals(0, meterRegistry.timer("plantuml.warmup.duration").count());
+    }
+}
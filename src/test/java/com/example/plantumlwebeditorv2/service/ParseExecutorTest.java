@@ -0,0 +1,75 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParseExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ParseExecutor parseExecutor;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // One thread, one queue slot
+        parseExecutor = new ParseExecutor(1, 1, Duration.ofMillis(200), Duration.ofSeconds(2), meterRegistry);
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        parseExecutor.shutdown();
+    }
+
+    @Test
+    void parse_SlowParse_TimesOutAndFreesCaller() {
+        RenderTimeoutException e = assertThrows(RenderTimeoutException.class,
+                () -> parseExecutor.parse(() -> {
+                    Thread.sleep(10_000);
+                    return "never";
+                }));
+
+        assertNull(e.getFormat());
+        assertEquals(1.0, meterRegistry.get("plantuml.parse.timeouts").counter().count());
+        // Interrupted on timeout, the thread is free again
+        assertEquals("ok", parseExecutor.parse(() -> "ok"));
+    }
+
+    @Test
+    void parse_PoolAndQueueFull_Rejected() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        callers.submit(() -> parseExecutor.parse(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        callers.submit(() -> parseExecutor.parse(() -> true));
+        waitForQueued();
+
+        RenderRejectedException e = assertThrows(RenderRejectedException.class, () -> parseExecutor.parse(() -> true));
+        assertEquals(2, e.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("plantuml.parse.rejected").counter().count());
+        release.countDown();
+    }
+
+    private void waitForQueued() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("plantuml.parse.queue.depth").gauge().value() < 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "second parse never queued");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -1,13 +1,33 @@
 package com.example.plantumlwebeditorv2.service;
 
+import com.example.plantumlwebeditorv2.dto.LayoutBenchmarkDTOs.EngineResult;
+import com.example.plantumlwebeditorv2.dto.LayoutBenchmarkDTOs.Report;
+import com.example.plantumlwebeditorv2.dto.PageInfoDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.sourceforge.plantuml.code.TranscoderUtil;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -16,9 +36,23 @@ public class PlantUmlServiceTest {
     @Autowired
     private PlantUmlService plantUmlService;
 
+    @Autowired
+    private RenderCache renderCache;
+
+    @Autowired
+    private GraphvizProbe graphvizProbe;
+
+    @Autowired
+    private LayoutBenchmark layoutBenchmark;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private static final String VALID_PLANTUML = "@startuml\nAlice -> Bob: Hello\nBob --> Alice: Hi\n@enduml";
     private static final String EMPTY_PLANTUML = "";
     private static final String INVALID_PLANTUML = "@startuml\nInvalid syntax\n@enduml";
+    private static final String MULTI_PAGE_PLANTUML = "@startuml\nAlice -> Bob\nnewpage\nBob -> Carol\n@enduml\n"
+            + "@startuml\nclass Foo\n@enduml";
 
     @Test
     void generateImage_PNG_Success() throws IOException {
@@ -44,6 +78,87 @@ public class PlantUmlServiceTest {
         assertTrue(svgStart.contains("<?xml") || svgStart.contains("<svg"));
     }
 
+    @Test
+    void render_SVG_Precompressed() throws IOException {
+        RenderArtifact svg = plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG);
+        RenderArtifact png = plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.PNG);
+
+        assertTrue(svg.hasGzip());
+        assertTrue(svg.gzipLength() < svg.length());
+        assertFalse(png.hasGzip());
+    }
+
+    @Test
+    void render_CachedArtifact_TrimmedAndNotShared() throws IOException {
+        RenderArtifact png = plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.PNG);
+        assertEquals(png.length(), png.capacity());
+
+        byte[] copy = png.toByteArray();
+        copy[0] = 0;
+        assertEquals((byte) 0x89, plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.PNG).toByteArray()[0]);
+    }
+
+    @Test
+    void render_SVG_Optimized() throws IOException {
+        RenderArtifact full = plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG);
+        RenderArtifact optimized = plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withOptimizeSvg(true));
+
+        String svg = optimized.toString(StandardCharsets.UTF_8);
+        assertTrue(svg.contains("<svg"));
+        assertFalse(svg.contains("SRC=["));
+        assertTrue(optimized.length() < full.length());
+        assertNotEquals(plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, RenderOptions.DEFAULT),
+                plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, RenderOptions.DEFAULT.withOptimizeSvg(true)));
+    }
+
+    @Test
+    void render_CosmeticEdit_EmbedsItsOwnSource() throws IOException {
+        String indented = VALID_PLANTUML.replace("Bob -->", "    Bob -->");
+
+        assertFalse(embeddedSource(plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG))
+                .contains("    Bob -->"));
+        assertTrue(embeddedSource(plantUmlService.render(indented, PlantUmlService.OutputFormat.SVG))
+                .contains("    Bob -->"));
+
+        // With the source stripped the two are the same image and share the render
+        RenderOptions optimized = RenderOptions.DEFAULT.withOptimizeSvg(true);
+        assertSame(plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, optimized),
+                plantUmlService.render(indented, PlantUmlService.OutputFormat.SVG, optimized));
+    }
+
+    private static String embeddedSource(RenderArtifact svg) throws IOException {
+        String text = svg.toString(StandardCharsets.UTF_8);
+        int start = text.indexOf("SRC=[") + "SRC=[".length();
+        return TranscoderUtil.getDefaultTranscoder().decode(text.substring(start, text.indexOf(']', start)));
+    }
+
+    @Test
+    void listPages_MultiPage_Success() {
+        List<PageInfoDTO> pages = plantUmlService.listPages(MULTI_PAGE_PLANTUML);
+
+        assertEquals(3, pages.size());
+        assertEquals("SEQUENCE", pages.get(1).getDiagramType());
+        assertEquals(1, pages.get(1).getPageInBlock());
+        assertEquals(1, pages.get(2).getBlock());
+        assertEquals("CLASS", pages.get(2).getDiagramType());
+    }
+
+    @Test
+    void render_PageByIndex_Success() throws IOException {
+        String first = plantUmlService.render(MULTI_PAGE_PLANTUML, PlantUmlService.OutputFormat.SVG)
+                .toString(StandardCharsets.UTF_8);
+        String third = plantUmlService.render(MULTI_PAGE_PLANTUML, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withPage(2)).toString(StandardCharsets.UTF_8);
+
+        assertTrue(first.contains("Alice"));
+        assertFalse(first.contains(">Foo<"));
+        assertTrue(third.contains(">Foo<"));
+        assertFalse(third.contains("Alice"));
+        assertThrows(IllegalArgumentException.class, () -> plantUmlService.render(MULTI_PAGE_PLANTUML,
+                PlantUmlService.OutputFormat.SVG, RenderOptions.DEFAULT.withPage(3)));
+    }
+
 
     @Test
     void renderDiagram_SVG_Success() throws IOException {
@@ -91,6 +206,59 @@ public class PlantUmlServiceTest {
         });
     }
 
+    @Test
+    void generateImage_RepeatedSource_ServedFromCache() throws IOException {
+        renderCache.flush();
+        long hitsBefore = renderCache.getStats().getHits();
+
+        byte[] first = plantUmlService.generateImage(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG);
+        // Different line endings, same diagram
+        byte[] second = plantUmlService.generateImage(VALID_PLANTUML.replace("\n", "\r\n") + "\n",
+                PlantUmlService.OutputFormat.SVG);
+
+        assertArrayEquals(first, second);
+        assertEquals(hitsBefore + 1, renderCache.getStats().getHits());
+        assertTrue(renderCache.getStats().getWeightBytes() >= first.length);
+    }
+
+    @Test
+    void graphvizProbe_StatusCachedAtStartup() {
+        GraphvizProbe.GraphvizStatus status = graphvizProbe.getStatus();
+
+        assertNotNull(status.checkedAt());
+        assertEquals(status.available(), plantUmlService.isGraphvizInstalled());
+        assertEquals("2.43.0", GraphvizProbe.parseVersion("dot - graphviz version 2.43.0 (0)"));
+    }
+
+    @Test
+    void graphvizProbe_HungDot_TimesOut(@TempDir Path tempDir) throws IOException {
+        assumeTrue(new File("/bin/sh").canExecute(), "needs a POSIX shell");
+        // Never writes or exits, like a dot stuck on a broken install
+        Path hungDot = Files.writeString(tempDir.resolve("dot"), "#!/bin/sh\nexec sleep 60\n");
+        assertTrue(hungDot.toFile().setExecutable(true));
+        GraphvizProbe probe = new GraphvizProbe();
+        ReflectionTestUtils.setField(probe, "configuredDotPath", hungDot.toString());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(15), probe::probe);
+        assertFalse(probe.isAvailable());
+        assertEquals(hungDot.toString(), probe.getStatus().path());
+    }
+
+    @Test
+    void generateImage_DeadlinePassed_Timeout() {
+        Duration original = plantUmlService.getTimeout(PlantUmlService.OutputFormat.SVG);
+        ReflectionTestUtils.setField(plantUmlService, "svgTimeout", Duration.ofMillis(1));
+        try {
+            // Unique source so it can't come from the cache
+            String source = "@startuml\nclass Timeout" + System.nanoTime() + "\n@enduml";
+            RenderTimeoutException e = assertThrows(RenderTimeoutException.class, () ->
+                    plantUmlService.generateImage(source, PlantUmlService.OutputFormat.SVG));
+            assertEquals(PlantUmlService.OutputFormat.SVG, e.getFormat());
+        } finally {
+            ReflectionTestUtils.setField(plantUmlService, "svgTimeout", original);
+        }
+    }
+
     @Test
     void generateImage_InvalidSyntax_Success() throws IOException {
         // PlantUML typically handles invalid syntax
@@ -100,4 +268,121 @@ public class PlantUmlServiceTest {
         assertTrue(image.length > 0);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void render_SmetanaLayout_NoDotNeeded() throws IOException {
+        String classDiagram = "@startuml\nclass Order\nclass Customer\nCustomer --> Order : places\n@enduml";
+
+        String svg = plantUmlService.render(classDiagram, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withLayout(LayoutEngine.SMETANA)).toString(StandardCharsets.UTF_8);
+
+        assertTrue(svg.contains(">Order<") && svg.contains(">Customer<"));
+        assertFalse(svg.contains("Cannot find Graphviz"));
+    }
+
+    @Test
+    void etag_LayoutResolvedBeforeKeying() {
+        String graphviz = plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withLayout(LayoutEngine.GRAPHVIZ));
+        String smetana = plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withLayout(LayoutEngine.SMETANA));
+
+        // Without dot a Graphviz request is laid out by Smetana and shares its cache entry
+        assertEquals(!plantUmlService.isGraphvizInstalled(), graphviz.equals(smetana));
+        assertEquals(graphviz, plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, RenderOptions.DEFAULT));
+        assertThrows(IllegalArgumentException.class, () -> LayoutEngine.parse("neato"));
+        assertEquals(LayoutEngine.SMETANA, LayoutEngine.parse(" smetana "));
+    }
+
+    @Test
+    void render_GraphvizFallback_CountedPerLayoutOnly() throws IOException {
+        String source = "@startuml\nclass Fallback" + System.nanoTime() + "\n@enduml";
+        RenderOptions graphviz = RenderOptions.DEFAULT.withLayout(LayoutEngine.GRAPHVIZ);
+        double before = fallbackCount();
+
+        for (int i = 0; i < 3; i++) {
+            plantUmlService.etag(source, PlantUmlService.OutputFormat.SVG, graphviz);
+        }
+        assertEquals(before, fallbackCount());
+
+        plantUmlService.render(source, PlantUmlService.OutputFormat.SVG, graphviz);
+        plantUmlService.render(source, PlantUmlService.OutputFormat.SVG, graphviz);
+        assertEquals(before + (plantUmlService.isGraphvizInstalled() ? 0 : 1), fallbackCount());
+    }
+
+    private double fallbackCount() {
+        var counter = meterRegistry.find("plantuml.render.layout.fallback").counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void render_DraftQuality_SmallerPngCachedSeparately() throws IOException {
+        RenderOptions draft = RenderOptions.DEFAULT.withQuality(RenderQuality.DRAFT);
+
+        BufferedImage full = ImageIO.read(new ByteArrayInputStream(
+                plantUmlService.generateImage(VALID_PLANTUML, PlantUmlService.OutputFormat.PNG)));
+        BufferedImage drafted = ImageIO.read(new ByteArrayInputStream(
+                plantUmlService.render(VALID_PLANTUML, PlantUmlService.OutputFormat.PNG, draft).toByteArray()));
+
+        assertTrue(drafted.getWidth() < full.getWidth() && drafted.getHeight() < full.getHeight());
+        assertNotEquals(plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, RenderOptions.DEFAULT),
+                plantUmlService.etag(VALID_PLANTUML, PlantUmlService.OutputFormat.SVG, draft));
+        assertThrows(IllegalArgumentException.class, () -> RenderQuality.parse("best"));
+    }
+
+    @Test
+    void render_Png_ReservesRasterSizedFromSvg() throws IOException {
+        String source = "@startuml\nAlice -> Carol: memory\n@enduml";
+        double estimated = meterRegistry.summary("plantuml.render.memory.estimated.bytes").totalAmount();
+
+        BufferedImage png = ImageIO.read(new ByteArrayInputStream(
+                plantUmlService.generateImage(source, PlantUmlService.OutputFormat.PNG)));
+
+        // The SVG that sized the raster is kept for the preview
+        assertNotNull(renderCache.get(RenderKey.of(source, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withLayout(plantUmlService.isGraphvizInstalled() ? LayoutEngine.GRAPHVIZ : LayoutEngine.SMETANA))));
+        double estimate = meterRegistry.summary("plantuml.render.memory.estimated.bytes").totalAmount() - estimated;
+        assertEquals(png.getWidth() * png.getHeight() * 4, estimate, estimate * 0.1);
+    }
+
+    @Test
+    void render_PngInWorker_NoReservationNoSizingRender() throws IOException {
+        String source = "@startuml\nAlice -> Carol: in a worker\n@enduml";
+        // Stands in for the worker JVM, same layout code without the pipe
+        RenderWorkerPool workers = mock(RenderWorkerPool.class);
+        when(workers.isEnabled()).thenReturn(true);
+        when(workers.render(any())).thenAnswer(invocation -> {
+            RenderArtifact.Buffer image = new RenderArtifact.Buffer(16 * 1024);
+            invocation.<LayoutRequest>getArgument(0).renderTo(image);
+            image.close();
+            return image;
+        });
+        Object inProcess = ReflectionTestUtils.getField(plantUmlService, "workerPool");
+        long estimates = meterRegistry.summary("plantuml.render.memory.estimated.bytes").count();
+        try {
+            ReflectionTestUtils.setField(plantUmlService, "workerPool", workers);
+            plantUmlService.generateImage(source, PlantUmlService.OutputFormat.PNG);
+        } finally {
+            ReflectionTestUtils.setField(plantUmlService, "workerPool", inProcess);
+        }
+
+        assertEquals(estimates, meterRegistry.summary("plantuml.render.memory.estimated.bytes").count());
+        assertNull(renderCache.get(RenderKey.of(source, PlantUmlService.OutputFormat.SVG,
+                RenderOptions.DEFAULT.withLayout(plantUmlService.isGraphvizInstalled() ? LayoutEngine.GRAPHVIZ : LayoutEngine.SMETANA))));
+    }
+
+    @Test
+    void layoutBenchmark_ComparesEnginesOnCorpus() throws IOException {
+        Report report = layoutBenchmark.run(PlantUmlService.OutputFormat.SVG, 1, 1);
+
+        assertEquals(5, report.getDiagrams());
+        EngineResult graphviz = report.getEngines().get(0);
+        EngineResult smetana = report.getEngines().get(1);
+        assertEquals(plantUmlService.isGraphvizInstalled(), graphviz.isAvailable());
+        assertTrue(smetana.isAvailable());
+        assertEquals(5, smetana.getRenders());
+        assertEquals(0, smetana.getFailures());
+        assertTrue(smetana.getP95Ms() >= smetana.getP50Ms() && smetana.getRendersPerSecond() > 0);
+        assertThrows(IllegalArgumentException.class, () -> layoutBenchmark.run(PlantUmlService.OutputFormat.SVG, 0, 1));
+    }
+}
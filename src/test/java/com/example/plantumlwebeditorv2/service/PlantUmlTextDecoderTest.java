@@ -0,0 +1,44 @@
+package com.example.plantumlwebeditorv2.service;
+
+import net.sourceforge.plantuml.code.TranscoderUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlantUmlTextDecoderTest {
+
+    private static final String SOURCE = "@startuml\nAlice -> Bob: Grüße\nBob --> Alice: Hi\n@enduml";
+
+    @Test
+    void decode_PlantUmlEncoding_RoundTrips() throws Exception {
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode(SOURCE);
+
+        assertEquals(SOURCE, PlantUmlTextDecoder.decode(encoded, 4096));
+        assertEquals(SOURCE, PlantUmlTextDecoder.decode("~1" + encoded, 4096));
+    }
+
+    @Test
+    void decode_Hex_RoundTrips() {
+        String encoded = "~h" + HexFormat.of().formatHex(SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(SOURCE, PlantUmlTextDecoder.decode(encoded, 4096));
+    }
+
+    @Test
+    void decode_OverLimit_Rejected() throws Exception {
+        // Compresses to a few bytes but inflates past the limit
+        String encoded = TranscoderUtil.getDefaultTranscoder().encode("@startuml\n" + "a".repeat(100_000) + "\n@enduml");
+
+        assertThrows(IllegalArgumentException.class, () -> PlantUmlTextDecoder.decode(encoded, 4096));
+    }
+
+    @Test
+    void decode_InvalidInput_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> PlantUmlTextDecoder.decode("not+valid", 4096));
+        assertThrows(IllegalArgumentException.class, () -> PlantUmlTextDecoder.decode("", 4096));
+        assertThrows(IllegalArgumentException.class, () -> PlantUmlTextDecoder.decode("~hzz", 4096));
+    }
+}
@@ -2,9 +2,11 @@ package com.example.plantumlwebeditorv2.service;
 
 import com.example.plantumlwebeditorv2.dto.ProjectDTO;
 import com.example.plantumlwebeditorv2.model.Project;
+import com.example.plantumlwebeditorv2.model.ProjectRender;
 import com.example.plantumlwebeditorv2.model.Role;
 import com.example.plantumlwebeditorv2.model.RoleType;
 import com.example.plantumlwebeditorv2.model.User;
+import com.example.plantumlwebeditorv2.repository.ProjectRenderRepository;
 import com.example.plantumlwebeditorv2.repository.ProjectRepository;
 import com.example.plantumlwebeditorv2.repository.RoleRepository;
 import com.example.plantumlwebeditorv2.repository.UserRepository;
@@ -36,6 +38,12 @@ public class ProjectServiceTest {
     @Autowired
     private ProjectRepository projectRepository;
 
+    @Autowired
+    private ProjectRenderRepository projectRenderRepository;
+
+    @Autowired
+    private ProjectRenderService projectRenderService;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -327,6 +335,29 @@ public class ProjectServiceTest {
         assertEquals(largeContent.toString(), updatedProject.getContent());
     }
 
+    @Test
+    void getProjectRender_StoredRenderIsCurrent_ServedFromStore() throws Exception {
+        String content = "@startuml\nAlice -> Bob: Stored\n@enduml";
+        Project project = projectRepository.save(new Project("Rendered", "Description", content, testUser));
+
+        projectRenderService.refresh(project.getId(), content);
+        ProjectRender render = projectRenderRepository.findById(project.getId()).orElseThrow();
+        assertEquals(ProjectRenderService.contentHash(content), render.getContentHash());
+
+        // Marker proves the stored copy is served instead of a new render
+        render.setSvg("<svg>stored</svg>");
+        projectRenderRepository.save(render);
+        assertEquals("<svg>stored</svg>", projectService.getProjectRender(project.getId()));
+
+        // Content changed, stored render is stale
+        ProjectDTO updateDTO = new ProjectDTO();
+        updateDTO.setContent("@startuml\nAlice -> Bob: Changed\n@enduml");
+        projectService.updateProject(project.getId(), updateDTO);
+        String svg = projectService.getProjectRender(project.getId());
+        assertNotEquals("<svg>stored</svg>", svg);
+        assertTrue(svg.contains("<svg"));
+    }
+
     @Test
     void deleteProject_Success() {
         Project project = new Project("Test Project", "Description", "Content", testUser);
@@ -0,0 +1,144 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class RenderCoalescerTest {
+
+    private static final RenderKey KEY = RenderKey.of("@startuml\nA -> B\n@enduml", PlantUmlService.OutputFormat.SVG);
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenderExecutor renderExecutor;
+    private RenderCache renderCache;
+    private RenderCoalescer renderCoalescer;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        renderExecutor = new RenderExecutor(2, 8, Duration.ofSeconds(1), meterRegistry);
+        renderCache = new RenderCache(1024 * 1024, true, new RenderStore(false, "unused", 0, 0));
+        renderCoalescer = new RenderCoalescer(renderCache, renderExecutor,
+                new DotProcessReaper(new GraphvizProbe()), meterRegistry);
+        callers = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        renderExecutor.shutdown();
+    }
+
+    @Test
+    void render_IdenticalConcurrentRequests_OneLayout() throws Exception {
+        AtomicInteger layouts = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<RenderArtifact> layout = () -> {
+            layouts.incrementAndGet();
+            release.await();
+            return RenderArtifact.of(new byte[] {1, 2, 3});
+        };
+
+        List<Future<RenderArtifact>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(callers.submit(() -> renderCoalescer.render(KEY, layout, Duration.ofSeconds(5))));
+        }
+        waitForCoalesced(2);
+        release.countDown();
+
+        for (Future<RenderArtifact> result : results) {
+            assertArrayEquals(new byte[] {1, 2, 3}, result.get(5, TimeUnit.SECONDS).toByteArray());
+        }
+        assertEquals(1, layouts.get());
+        assertEquals(0, renderCoalescer.getInFlightCount());
+        assertNotNull(renderCache.get(KEY));
+    }
+
+    @Test
+    void render_FollowerTimesOut_LeaderStillCompletes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<RenderArtifact> layout = () -> {
+            release.await();
+            return RenderArtifact.of(new byte[] {7});
+        };
+
+        Future<RenderArtifact> leader = callers.submit(() -> renderCoalescer.render(KEY, layout, Duration.ofSeconds(5)));
+        Future<RenderArtifact> follower = callers.submit(() -> renderCoalescer.render(KEY, layout, Duration.ofMillis(50)));
+        waitForCoalesced(1);
+
+        Exception e = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RenderTimeoutException.class, e.getCause());
+
+        release.countDown();
+        assertArrayEquals(new byte[] {7}, leader.get(5, TimeUnit.SECONDS).toByteArray());
+    }
+
+    // Repeated: the interrupt races the layout's own release, a kill after it used to find nothing
+    @RepeatedTest(5)
+    void render_SupersededWaiterInterrupted_NeighbourKeepsItsDot(@TempDir Path tempDir) throws Exception {
+        assumeTrue(Files.exists(Path.of("/proc/thread-self")), "needs Linux /proc");
+        // A copy of sleep called dot stands in for Graphviz, started from the render thread like ProcessRunner does
+        Path fakeDot = Files.copy(Path.of("/bin/sleep"), tempDir.resolve("dot"));
+        RenderKey neighbourKey = RenderKey.of("@startuml\nC -> D\n@enduml", PlantUmlService.OutputFormat.SVG);
+        AtomicReference<Process> supersededDot = new AtomicReference<>();
+        AtomicReference<Process> neighbourDot = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<RenderArtifact> superseded = callers.submit(() -> renderCoalescer.render(KEY, () -> {
+            Process dot = new ProcessBuilder(fakeDot.toString(), "30").start();
+            supersededDot.set(dot);
+            started.countDown();
+            dot.waitFor();
+            return RenderArtifact.of(new byte[] {1});
+        }, Duration.ofSeconds(30)));
+        Future<RenderArtifact> neighbour = callers.submit(() -> renderCoalescer.render(neighbourKey, () -> {
+            Process dot = new ProcessBuilder(fakeDot.toString(), "30").start();
+            neighbourDot.set(dot);
+            started.countDown();
+            release.await();
+            dot.destroy();
+            return RenderArtifact.of(new byte[] {2});
+        }, Duration.ofSeconds(30)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // What a newer preview version does to the older one's waiter
+        superseded.cancel(true);
+
+        assertTrue(supersededDot.get().waitFor(5, TimeUnit.SECONDS), "superseded render's dot survived");
+        assertTrue(neighbourDot.get().isAlive(), "neighbour's dot was killed");
+        release.countDown();
+        assertArrayEquals(new byte[] {2}, neighbour.get(5, TimeUnit.SECONDS).toByteArray());
+        assertNotNull(renderCache.get(neighbourKey));
+        assertNull(renderCache.get(KEY));
+    }
+
+    private void waitForCoalesced(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("plantuml.render.coalesced").counter().count() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "followers never joined");
+            Thread.sleep(5);
+        }
+    }
+}
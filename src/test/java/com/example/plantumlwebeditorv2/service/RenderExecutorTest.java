@@ -0,0 +1,56 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenderExecutor renderExecutor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // One running render and one waiting
+        renderExecutor = new RenderExecutor(1, 1, Duration.ofSeconds(2), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renderExecutor.shutdown();
+    }
+
+    @Test
+    void submit_QueueFull_Rejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> running = renderExecutor.submit(() -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = renderExecutor.submit(() -> "second");
+        assertEquals(1, renderExecutor.getQueueDepth());
+
+        RenderRejectedException rejected = assertThrows(RenderRejectedException.class,
+                () -> renderExecutor.submit(() -> "third"));
+        assertEquals(2, rejected.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("plantuml.render.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(2, meterRegistry.get("plantuml.render.queue.wait").timer().count());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderMemoryBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenderMemoryBudget memoryBudget;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        memoryBudget = new RenderMemoryBudget(4 * MB, Duration.ofMillis(50), Duration.ofSeconds(2), meterRegistry);
+    }
+
+    @Test
+    void reserve_BusyBudget_RejectedUntilReleased() throws Exception {
+        RenderMemoryBudget.Reservation first = memoryBudget.reserve(3 * MB);
+        assertEquals(3 * MB, memoryBudget.getReservedBytes());
+        assertEquals(3.0 * MB, meterRegistry.get("plantuml.render.memory.reserved.bytes").gauge().value());
+
+        RenderRejectedException rejected = assertThrows(RenderRejectedException.class, () -> memoryBudget.reserve(2 * MB));
+        assertEquals(2, rejected.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("plantuml.render.memory.rejected").counter().count());
+
+        first.close();
+        try (RenderMemoryBudget.Reservation second = memoryBudget.reserve(2 * MB)) {
+            assertEquals(2 * MB, memoryBudget.getReservedBytes());
+        }
+        assertEquals(0, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void reserve_LargerThanBudget_Refused() {
+        assertThrows(IllegalArgumentException.class, () -> memoryBudget.reserve(5 * MB));
+        assertEquals(1.0, meterRegistry.get("plantuml.render.memory.refused").counter().count());
+        assertEquals(0, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    void estimatePngBytes_CroppedAtImageLimit() {
+        assertEquals(200L * 100 * 4, RenderMemoryBudget.estimatePngBytes(199.5, 100));
+        // PlantUML never draws more than 4096 px per side by default
+        assertEquals(4096L * 4096 * 4, RenderMemoryBudget.estimatePngBytes(100_000, 50_000));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.plantumlwebeditorv2.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private RenderStore openStore(long maxBytes, long segmentBytes) {
+        RenderStore store = new RenderStore(true, directory.toString(), maxBytes, segmentBytes);
+        store.open();
+        return store;
+    }
+
+    private static RenderKey key(int i) {
+        return RenderKey.of("@startuml\nA -> B: " + i + "\n@enduml", PlantUmlService.OutputFormat.SVG);
+    }
+
+    private static byte[] image(int i, int size) {
+        byte[] data = new byte[size];
+        for (int j = 0; j < size; j++) {
+            data[j] = (byte) (i + j);
+        }
+        return data;
+    }
+
+    @Test
+    void get_AfterRestart_ReturnsStoredImage() throws Exception {
+        RenderStore store = openStore(1 << 20, 1 << 16);
+        store.put(key(1), RenderArtifact.of(image(1, 500)));
+        store.drain();
+        store.close();
+
+        RenderStore reopened = openStore(1 << 20, 1 << 16);
+        assertArrayEquals(image(1, 500), reopened.get(key(1)).toByteArray());
+        assertNull(reopened.get(key(2)));
+        assertEquals(1, reopened.getHits());
+        reopened.close();
+    }
+
+    @Test
+    void open_TornRecordAtEnd_KeepsEarlierEntries() throws Exception {
+        RenderStore store = openStore(1 << 20, 1 << 16);
+        store.put(key(1), RenderArtifact.of(image(1, 300)));
+        store.drain();
+        store.close();
+
+        // Simulate a crash in the middle of writing the next record
+        Path segment;
+        try (Stream<Path> files = Files.walk(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] {0x50, 0x4C, 0x55, 0x52, 0, 9}, StandardOpenOption.APPEND);
+
+        RenderStore reopened = openStore(1 << 20, 1 << 16);
+        assertArrayEquals(image(1, 300), reopened.get(key(1)).toByteArray());
+        reopened.put(key(2), RenderArtifact.of(image(2, 300)));
+        reopened.drain();
+        assertArrayEquals(image(2, 300), reopened.get(key(2)).toByteArray());
+        reopened.close();
+    }
+
+    @Test
+    void open_ReplacedRecordsInSameSegment_CountedDeadForCompaction() throws Exception {
+        RenderStore store = openStore(1 << 20, 1024);
+        store.put(key(1), RenderArtifact.of(image(1, 300)));
+        store.drain();
+        store.close();
+
+        // The same key written twice more into the segment, only the last copy is live
+        Path segment;
+        try (Stream<Path> files = Files.walk(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+        byte[] record = Files.readAllBytes(segment);
+        Files.write(segment, record, StandardOpenOption.APPEND);
+        Files.write(segment, record, StandardOpenOption.APPEND);
+
+        RenderStore reopened = openStore(1 << 20, 1024);
+        long before = reopened.getSizeBytes();
+        reopened.compact();
+
+        assertEquals(record.length, reopened.getSizeBytes());
+        assertTrue(reopened.getSizeBytes() < before);
+        assertArrayEquals(image(1, 300), reopened.get(key(1)).toByteArray());
+        reopened.close();
+    }
+
+    @Test
+    void put_OverSizeCap_EvictsLeastRecentlyUsedSegments() throws Exception {
+        RenderStore store = openStore(4096, 1024);
+        for (int i = 0; i < 20; i++) {
+            store.put(key(i), RenderArtifact.of(image(i, 400)));
+        }
+        store.drain();
+        store.compact();
+
+        assertTrue(store.getSizeBytes() <= 4096);
+        assertTrue(store.getEvictedSegments() > 0);
+        // Newest entries survive
+        assertArrayEquals(image(19, 400), store.get(key(19)).toByteArray());
+        assertNull(store.get(key(0)));
+        store.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.plantumlwebeditorv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.plantuml.FileFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderWorkerPoolTest {
+
+    private static final LayoutRequest CLASS_DIAGRAM = new LayoutRequest(
+            "@startuml\nclass Order\nclass Customer\nCustomer --> Order\n@enduml",
+            FileFormat.SVG, 0, List.of("!pragma layout smetana"));
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenderWorkerPool workerPool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // One worker, replaced after every second render
+        workerPool = new RenderWorkerPool(true, 1, DataSize.ofMegabytes(128), 2, 0.99, Duration.ofSeconds(60),
+                1, new GraphvizProbe(), meterRegistry);
+        workerPool.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        workerPool.shutdown();
+    }
+
+    @Test
+    void render_InWorker_RecycledAfterMaxRenders() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String svg = render(CLASS_DIAGRAM);
+            assertTrue(svg.contains(">Order<") && svg.contains(">Customer<"));
+        }
+
+        assertEquals(1.0, meterRegistry.get("plantuml.render.workers.retired").tag("reason", "renders").counter().count());
+        assertEquals(0, meterRegistry.find("plantuml.render.workers.fallback").counters().size());
+    }
+
+    @Test
+    void render_WorkerCrashed_FailsOverToFreshWorker() throws Exception {
+        render(CLASS_DIAGRAM);
+        ProcessHandle.current().children().forEach(ProcessHandle::destroyForcibly);
+
+        assertTrue(render(CLASS_DIAGRAM).contains(">Order<"));
+        assertEquals(1.0, meterRegistry.get("plantuml.render.workers.retired").tag("reason", "crashed").counter().count());
+        assertEquals(1, workerPool.getLiveCount());
+    }
+
+    @Test
+    void render_Disabled_LeftToCaller() throws Exception {
+        RenderWorkerPool disabled = new RenderWorkerPool(false, 1, DataSize.ofMegabytes(128), 2, 0.99,
+                Duration.ofSeconds(60), 1, new GraphvizProbe(), meterRegistry);
+        disabled.start();
+
+        assertNull(disabled.render(CLASS_DIAGRAM));
+        assertEquals(0, disabled.getLiveCount());
+    }
+
+    private String render(LayoutRequest request) throws Exception {
+        RenderArtifact.Buffer image = workerPool.render(request);
+        assertNotNull(image, "rendered in-process instead of in a worker");
+        return image.toArtifact().toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.plantumlwebeditorv2.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceNormalizerTest {
+
+    private static final String SEQUENCE = "@startuml\nAlice -> Bob: Hello\n\nBob --> Alice: Hi\n@enduml";
+
+    @Test
+    void normalize_CosmeticEdits_SameKey() {
+        String edited = "@startuml\r\n  Alice -> Bob: Hello   \r\n' reply below\r\n\tBob --> Alice: Hi\r\n@enduml\r\n\r\n";
+
+        assertEquals(SourceNormalizer.normalize(SEQUENCE), SourceNormalizer.normalize(edited));
+        RenderOptions optimized = RenderOptions.DEFAULT.withOptimizeSvg(true);
+        assertEquals(RenderKey.of(SEQUENCE, PlantUmlService.OutputFormat.SVG, optimized),
+                RenderKey.of(edited, PlantUmlService.OutputFormat.SVG, optimized));
+    }
+
+    @Test
+    void renderKey_SourceEmbedded_RawSource() {
+        // Plain SVGs and PNGs carry the source as written, a cosmetic edit is a different image there
+        String edited = "@startuml\n  Alice -> Bob: Hello\n\nBob --> Alice: Hi\n@enduml";
+
+        assertNotEquals(RenderKey.of(SEQUENCE, PlantUmlService.OutputFormat.SVG),
+                RenderKey.of(edited, PlantUmlService.OutputFormat.SVG));
+        assertNotEquals(RenderKey.of(SEQUENCE, PlantUmlService.OutputFormat.PNG),
+                RenderKey.of(edited, PlantUmlService.OutputFormat.PNG));
+    }
+
+    @Test
+    void normalize_KeepsLineNumbers() {
+        // Removing a line would shift the line numbers shown in error images
+        String withExtraComment = "@startuml\n' one\n' two\nAlice -> Bob: Hello\n\nBob --> Alice: Hi\n@enduml";
+
+        assertNotEquals(SourceNormalizer.normalize(SEQUENCE), SourceNormalizer.normalize(withExtraComment));
+    }
+
+    @Test
+    void normalize_LabelWhitespace_Kept() {
+        assertNotEquals(SourceNormalizer.normalize("@startuml\nA -> B: a  b\n@enduml"),
+                SourceNormalizer.normalize("@startuml\nA -> B: a b\n@enduml"));
+    }
+
+    @Test
+    void normalize_MultiLineConstructs_OnlyLineEndings() {
+        String note = "@startuml\nA -> B\nnote left\n  ' shown as text\n    indented\nend note\n@enduml";
+        String noteVariant = "@startuml\nA -> B\nnote left\n  ' shown as text\nindented\nend note\n@enduml";
+        assertNotEquals(SourceNormalizer.normalize(note), SourceNormalizer.normalize(noteVariant));
+        assertEquals(note, SourceNormalizer.normalize(note.replace("\n", "\r\n") + "\n\n"));
+
+        String activity = "@startuml\n:first line\n  second line;\n@enduml";
+        assertEquals(activity, SourceNormalizer.normalize(activity));
+
+        String ditaa = "@startditaa\n+---+\n  | A |\n@endditaa";
+        assertEquals(ditaa, SourceNormalizer.normalize(ditaa));
+
+        String classBody = "@startuml\nclass Foo {\n  'field\n}\n@enduml";
+        assertEquals(classBody, SourceNormalizer.normalize(classBody));
+    }
+}
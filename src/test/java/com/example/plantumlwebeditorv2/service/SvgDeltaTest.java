@@ -0,0 +1,54 @@
+package com.example.plantumlwebeditorv2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SvgDeltaTest {
+
+    private static String svg(int participants, String label) {
+        StringBuilder svg = new StringBuilder("<?xml version=\"1.0\"?><svg width=\"800\" height=\"600\"><g>");
+        for (int i = 0; i < participants; i++) {
+            svg.append("<rect fill=\"#E2E2F0\" height=\"30.4883\" style=\"stroke:#181818;stroke-width:0.5;\" width=\"")
+                    .append(40 + i).append("\" x=\"").append(i * 57).append("\" y=\"10\"/><text font-family=\"sans-serif\">")
+                    .append(i == participants / 2 ? label : "Participant" + i).append("</text>");
+        }
+        return svg.append("</g></svg>").toString();
+    }
+
+    private static int literalChars(List<Object> ops) {
+        return ops.stream().filter(op -> op instanceof String).mapToInt(op -> ((String) op).length()).sum();
+    }
+
+    @Test
+    void encode_SmallEdit_SendsOnlyTheChange() {
+        String base = svg(200, "Alice");
+        String target = svg(200, "Alicia");
+
+        List<Object> ops = SvgDelta.encode(base, target);
+
+        assertEquals(target, SvgDelta.apply(base, ops));
+        assertTrue(literalChars(ops) < 100, "literal chars: " + literalChars(ops));
+    }
+
+    @Test
+    void encode_InsertedAndRemovedParts_RoundTrip() {
+        String base = svg(150, "Alice");
+        String grown = svg(160, "Bob");
+        String shrunk = svg(40, "Alice");
+
+        assertEquals(grown, SvgDelta.apply(base, SvgDelta.encode(base, grown)));
+        assertEquals(shrunk, SvgDelta.apply(base, SvgDelta.encode(base, shrunk)));
+        assertEquals(base, SvgDelta.apply(grown, SvgDelta.encode(grown, base)));
+    }
+
+    @Test
+    void encode_UnrelatedOrTinyInput_FallsBackToLiterals() {
+        assertEquals(List.of("<svg/>"), SvgDelta.encode(svg(10, "A"), "<svg/>"));
+
+        String target = "x".repeat(100) + "Grüße";
+        assertEquals(target, SvgDelta.apply("<svg>" + "y".repeat(100) + "</svg>", SvgDelta.encode("<svg>" + "y".repeat(100) + "</svg>", target)));
+    }
+}
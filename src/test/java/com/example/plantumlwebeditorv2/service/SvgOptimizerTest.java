@@ -0,0 +1,58 @@
+package com.example.plantumlwebeditorv2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SvgOptimizerTest {
+
+    private static String optimize(String svg) {
+        return SvgOptimizer.optimize(RenderArtifact.of(svg.getBytes(StandardCharsets.UTF_8)))
+                .toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void optimize_StripsSourceAndProcessingInstructions() {
+        String svg = "<?xml version=\"1.0\"?><?plantuml 1.2025.2?><svg><g><text x=\"5\">A</text>"
+                + "<!--SRC=[AyaioKbL2E5opCbC]--></g></svg>";
+
+        assertEquals("<?xml version=\"1.0\"?><svg><g><text x=\"5\">A</text></g></svg>", optimize(svg));
+    }
+
+    @Test
+    void optimize_RoundsGeometryOnly() {
+        String svg = "<svg><path d=\"M14,146.8594 L43,171.8594\" fill=\"#E2E2F0\" fill-opacity=\"0.00000\" "
+                + "style=\"stroke:#181818;stroke-width:0.5;stroke-dasharray:5.0,5.0;\"/>"
+                + "<text data-participant=\"A1.23456\" textLength=\"33.667\" lengthAdjust=\"spacing\">v1.23456</text></svg>";
+
+        assertEquals("<svg><path d=\"M14,146.86 L43,171.86\" fill=\"#E2E2F0\" fill-opacity=\"0\" "
+                + "style=\"stroke:#181818;stroke-width:0.5;stroke-dasharray:5,5\"/>"
+                + "<text data-participant=\"A1.23456\" textLength=\"33.67\">v1.23456</text></svg>", optimize(svg));
+    }
+
+    @Test
+    void optimize_KeepsTextAndEntities() {
+        String svg = "<svg><title>Grüße &amp; 1.23456</title><text x=\"1.999\">&#160;&lt;</text></svg>";
+
+        assertEquals("<svg><title>Grüße &amp; 1.23456</title><text x=\"2\">&#160;&lt;</text></svg>", optimize(svg));
+    }
+
+    @Test
+    void optimize_KeepsTextBearingAttributes() {
+        String svg = "<svg><a xlink:title=\"v1.23456 at 0.125\" aria-label=\"Step 2.5\"><rect x=\"1.234\"/></a></svg>";
+
+        assertEquals("<svg><a xlink:title=\"v1.23456 at 0.125\" aria-label=\"Step 2.5\"><rect x=\"1.23\"/></a></svg>",
+                optimize(svg));
+    }
+
+    @Test
+    void optimize_CollapsesRedundantStyles() {
+        String svg = "<svg><rect style=\"stroke:#181818;stroke-width:1.0;;fill:none;stroke:#A80036;\"/>"
+                + "<text style=\"font-family:'a;b';\">x</text></svg>";
+
+        assertEquals("<svg><rect style=\"stroke:#A80036;stroke-width:1;fill:none\"/>"
+                + "<text style=\"font-family:'a;b'\">x</text></svg>", optimize(svg));
+    }
+}
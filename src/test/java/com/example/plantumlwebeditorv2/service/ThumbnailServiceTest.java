@@ -0,0 +1,151 @@
+package com.example.plantumlwebeditorv2.service;
+
+import com.example.plantumlwebeditorv2.model.DiagramThumbnail;
+import com.example.plantumlwebeditorv2.model.Project;
+import com.example.plantumlwebeditorv2.model.User;
+import com.example.plantumlwebeditorv2.repository.DiagramThumbnailRepository;
+import com.example.plantumlwebeditorv2.repository.ProjectRepository;
+import com.example.plantumlwebeditorv2.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+
+@SpringBootTest(properties = "plantuml.thumbnail.debounce=PT0.3S")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ThumbnailServiceTest {
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private DiagramThumbnailRepository thumbnailRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RenderCache renderCache;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        thumbnailRepository.deleteAll();
+        owner = userRepository.save(new User("thumbnailuser", "thumbnail@example.com", "password"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        projectRepository.deleteAll();
+        userRepository.delete(owner);
+        thumbnailRepository.deleteAll();
+    }
+
+    private Project saveProject(String content) {
+        return projectRepository.save(new Project("Thumbnail", null, content, owner));
+    }
+
+    private static String wideDiagram() {
+        StringBuilder source = new StringBuilder("@startuml\n");
+        for (int i = 0; i < 12; i++) {
+            source.append("Participant").append(i).append(" -> Participant").append(i + 1).append(": call ").append(i).append('\n');
+        }
+        return source.append("@enduml").toString();
+    }
+
+    @Test
+    void generate_StoresScaledPngByContentHash() throws Exception {
+        Project project = saveProject(wideDiagram());
+        long cachedBefore = renderCache.getStats().getEntries();
+
+        thumbnailService.generate(project.getId());
+        // The full size PNG is only an intermediate
+        assertEquals(cachedBefore, renderCache.getStats().getEntries());
+
+        String hash = ProjectRenderService.contentHash(project.getContent());
+        DiagramThumbnail thumbnail = thumbnailRepository.findById(hash).orElseThrow();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail.getPng()));
+        assertTrue(image.getWidth() <= 320 && image.getHeight() <= 240);
+        // Scaled down to touch the box on one side
+        assertTrue(image.getWidth() == 320 || image.getHeight() == 240);
+        assertEquals(image.getWidth(), thumbnail.getWidth());
+        assertEquals(Set.of(hash), thumbnailService.existing(Set.of(hash, "0".repeat(64))));
+
+        mockMvc.perform(get("/api/thumbnails/" + hash))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"));
+    }
+
+    @Test
+    void prune_EditedAndDeletedProjects_OrphansRemoved() {
+        Project project = saveProject("@startuml\nAlice -> Bob: first\n@enduml");
+        thumbnailService.generate(project.getId());
+        String first = ProjectRenderService.contentHash(project.getContent());
+        project.setContent("@startuml\nAlice -> Bob: second\n@enduml");
+        project = projectRepository.save(project);
+        thumbnailService.generate(project.getId());
+        String second = ProjectRenderService.contentHash(project.getContent());
+
+        assertEquals(1, thumbnailService.prune());
+        assertEquals(Set.of(second), thumbnailService.existing(Set.of(first, second)));
+
+        projectRepository.delete(project);
+        assertEquals(1, thumbnailService.prune());
+        assertTrue(thumbnailRepository.findAll().isEmpty());
+    }
+
+    @Test
+    void getThumbnail_MissingOrMalformedHash() throws Exception {
+        mockMvc.perform(get("/api/thumbnails/" + "0".repeat(64)))
+                .andExpect(status().isNotFound())
+                .andExpect(header().string("Cache-Control", "no-store"));
+        mockMvc.perform(get("/api/thumbnails/not-a-hash"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void schedule_BurstOfChanges_GeneratesOnceForLastVersion() throws Exception {
+        Project project = saveProject("@startuml\nAlice -> Bob\n@enduml");
+        double debouncedBefore = meterRegistry.counter("plantuml.thumbnail.debounced").count();
+
+        for (int i = 0; i < 5; i++) {
+            project.setContent("@startuml\nAlice -> Bob: save " + i + "\n@enduml");
+            project = projectRepository.save(project);
+            thumbnailService.schedule(project.getId());
+        }
+
+        String lastHash = ProjectRenderService.contentHash(project.getContent());
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!thumbnailRepository.existsById(lastHash) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(thumbnailRepository.existsById(lastHash));
+        assertEquals(1, thumbnailRepository.count());
+        assertEquals(4, meterRegistry.counter("plantuml.thumbnail.debounced").count() - debouncedBefore);
+    }
+}